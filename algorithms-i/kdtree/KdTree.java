@@ -1,34 +1,56 @@
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntConsumer;
 
 import edu.princeton.cs.algs4.Point2D;
 import edu.princeton.cs.algs4.RectHV;
 import edu.princeton.cs.algs4.StdDraw;
+import edu.princeton.cs.algs4.StdRandom;
 
 public class KdTree {
 
 	private KdTreeNode root;
-	private int size;
 	
 	public KdTree() {
 	}
 
+	// builds a balanced tree of the distinct points in O(n log n): every subtree is split at the median
+	// of its points, found by quickselect, and the two halves are built in parallel
+	public static KdTree build(Point2D[] points) {
+		Point2D[] distinct = KdTreeBuilder.distinctPoints(points);
+		KdTree tree = new KdTree();
+		if (distinct.length > 0) {
+			tree.root = ForkJoinPool.commonPool().invoke(new KdTreeBuilder(distinct, 0, distinct.length, true));
+		}
+		return tree;
+	}
+
 	public boolean isEmpty() {
-		return this.root == null;
+		return this.size() == 0;
 	}
 
 	public int size() {
-		return this.size;
+		return this.root == null ? 0 : this.root.liveCount();
 	}
 
 	public void insert(Point2D p) {
 		if (p == null) throw new IllegalArgumentException();
-		if (this.root == null) {
-			this.root = new KdTreeNode(p, true);
-			++this.size;
-		} else {
-			if (this.root.insert(p)) ++this.size;
-		}
+		this.root = KdTreeNode.insert(this.root, p);
+	}
+
+	public void delete(Point2D p) {
+		if (p == null) throw new IllegalArgumentException();
+		if (this.root == null) return;
+		this.root = KdTreeNode.delete(this.root, p);
 	}
 
 	public boolean contains(Point2D p) {
@@ -51,10 +73,97 @@ public class KdTree {
 
 	public Point2D nearest(Point2D p) {
 		if (p == null) throw new IllegalArgumentException();
-		if (this.root == null) return null;
+		if (this.isEmpty()) return null;
 		return this.root.nearestNeighbor(p);
 	}
 
+	public Iterable<Point2D> nearest(Point2D p, int k) {
+		if (p == null || k < 0) throw new IllegalArgumentException();
+		if (this.root == null || k == 0) return new ArrayList<Point2D>();
+		return this.root.kNearestNeighbors(p, k);
+	}
+
+	public Iterable<Point2D> withinRadius(Point2D p, double r) {
+		if (p == null || !(r >= 0)) throw new IllegalArgumentException();
+		if (this.root == null) return new ArrayList<Point2D>();
+		return this.root.radiusSearch(p, r);
+	}
+
+	// nearest point to each query, in input order; the queries are visited along a Z-order curve, so that
+	// consecutive ones mostly follow the same tree paths, and split across the common fork-join pool
+	public Point2D[] nearestAll(Point2D[] queries) {
+		if (queries == null) throw new IllegalArgumentException();
+		double[] xs = new double[queries.length];
+		double[] ys = new double[queries.length];
+		for (int i = 0; i < queries.length; i++) {
+			if (queries[i] == null) throw new IllegalArgumentException();
+			xs[i] = queries[i].x();
+			ys[i] = queries[i].y();
+		}
+		
+		Point2D[] nearest = new Point2D[queries.length];
+		KdTreeNode root = this.root;
+		if (root == null || root.liveCount() == 0) return nearest;
+		ForkJoinPool.commonPool().invoke(new KdTreeBatch(zOrder(xs, ys), 0, queries.length,
+				i -> nearest[i] = root.nearestNeighbor(queries[i])));
+		return nearest;
+	}
+
+	// points inside each rectangle, in input order, answered in the same order and in parallel like nearestAll
+	public List<Iterable<Point2D>> rangeAll(RectHV[] rects) {
+		if (rects == null) throw new IllegalArgumentException();
+		double[] xs = new double[rects.length];
+		double[] ys = new double[rects.length];
+		for (int i = 0; i < rects.length; i++) {
+			if (rects[i] == null) throw new IllegalArgumentException();
+			xs[i] = (rects[i].xmin() + rects[i].xmax()) / 2;
+			ys[i] = (rects[i].ymin() + rects[i].ymax()) / 2;
+		}
+		
+		List<Iterable<Point2D>> ranges = new ArrayList<>(Collections.nCopies(rects.length, null));
+		KdTreeNode root = this.root;
+		if (root == null) {
+			for (int i = 0; i < rects.length; i++) {
+				ranges.set(i, new ArrayList<Point2D>());
+			}
+		} else {
+			ForkJoinPool.commonPool().invoke(new KdTreeBatch(zOrder(xs, ys), 0, rects.length,
+					i -> ranges.set(i, root.rangeSearch(rects[i]))));
+		}
+		return ranges;
+	}
+
+	// indices of the given coordinates sorted by their Morton code over the unit square, 15 bits per axis
+	// so that the code and the index fit together in one non-negative long
+	private static int[] zOrder(double[] xs, double[] ys) {
+		long[] keys = new long[xs.length];
+		for (int i = 0; i < keys.length; i++) {
+			long code = spreadBits(cell(xs[i])) | spreadBits(cell(ys[i])) << 1;
+			keys[i] = code << 32 | i;
+		}
+		Arrays.parallelSort(keys);
+		
+		int[] order = new int[keys.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = (int) keys[i];
+		}
+		return order;
+	}
+
+	private static int cell(double coordinate) {
+		return (int) (Math.min(Math.max(coordinate, 0), 1) * ((1 << 15) - 1));
+	}
+
+	// moves bit k of the value to bit 2k
+	private static long spreadBits(int value) {
+		long bits = value & 0x7FFF;
+		bits = (bits | bits << 8) & 0x00FF00FFL;
+		bits = (bits | bits << 4) & 0x0F0F0F0FL;
+		bits = (bits | bits << 2) & 0x33333333L;
+		bits = (bits | bits << 1) & 0x55555555L;
+		return bits;
+	}
+
 	public static void main(String[] args) {
 		KdTree tree = new KdTree();
 		tree.insert(new Point2D(0.7, 0.2));
@@ -63,46 +172,248 @@ public class KdTree {
 		tree.insert(new Point2D(0.4, 0.7));
 		tree.insert(new Point2D(0.9, 0.6));
 		System.out.println(tree.contains(new Point2D(0.2, 0.3)));
+		System.out.println(tree.nearest(new Point2D(0.6, 0.3), 2));
+		System.out.println(tree.withinRadius(new Point2D(0.6, 0.3), 0.25));
+		tree.delete(new Point2D(0.5, 0.4));
+		System.out.println(tree.size() + " " + tree.contains(new Point2D(0.5, 0.4)) + " " + tree.nearest(new Point2D(0.6, 0.3)));
+		
+		// allocation per query on a large tree, after warming up: nearest should allocate nothing
+		// and range only the list it returns
+		int points = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		int queries = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+		Point2D[] randomPoints = new Point2D[points];
+		for (int i = 0; i < points; i++) {
+			randomPoints[i] = new Point2D(StdRandom.uniform(), StdRandom.uniform());
+		}
+		long buildStart = System.nanoTime();
+		KdTree large = KdTree.build(randomPoints);
+		System.out.printf("built %d points in %d ms%n", points, (System.nanoTime() - buildStart) / 1_000_000);
+		
+		// points exported in grid order keep pushing insert out of balance, so it rebuilds as it goes, while build
+		// partitions them once
+		int side = 200;
+		Point2D[] grid = new Point2D[side * side];
+		for (int i = 0; i < grid.length; i++) {
+			grid[i] = new Point2D((double) (i / side) / side, (double) (i % side) / side);
+		}
+		buildStart = System.nanoTime();
+		KdTree inserted = new KdTree();
+		for (Point2D point : grid) {
+			inserted.insert(point);
+		}
+		long insertTime = System.nanoTime() - buildStart;
+		buildStart = System.nanoTime();
+		KdTree built = KdTree.build(grid);
+		long builtTime = System.nanoTime() - buildStart;
+		System.out.printf("%d sorted grid points: inserted in %d ms, built in %d ms, same nearest: %b%n", grid.length,
+				insertTime / 1_000_000, builtTime / 1_000_000, inserted.nearest(new Point2D(0.5, 0.5)).equals(built.nearest(new Point2D(0.5, 0.5))));
+		double[] xs = new double[queries];
+		double[] ys = new double[queries];
+		for (int i = 0; i < queries; i++) {
+			xs[i] = StdRandom.uniform();
+			ys[i] = StdRandom.uniform();
+		}
+		Point2D[] nearestQueries = new Point2D[queries];
+		RectHV[] rangeQueries = new RectHV[queries];
+		for (int i = 0; i < queries; i++) {
+			nearestQueries[i] = new Point2D(xs[i], ys[i]);
+			rangeQueries[i] = new RectHV(xs[i], ys[i], Math.min(1, xs[i] + 0.001), Math.min(1, ys[i] + 0.001));
+		}
+		
+		for (int round = 0; round < 3; round++) {
+			long allocated = allocatedBytes();
+			long start = System.nanoTime();
+			for (Point2D query : nearestQueries) {
+				large.nearest(query);
+			}
+			long nearestTime = System.nanoTime() - start;
+			long nearestBytes = allocatedBytes() - allocated;
+			
+			allocated = allocatedBytes();
+			start = System.nanoTime();
+			long found = 0;
+			for (RectHV query : rangeQueries) {
+				for (Point2D point : large.range(query)) {
+					++found;
+				}
+			}
+			long rangeTime = System.nanoTime() - start;
+			long rangeBytes = allocatedBytes() - allocated;
+			System.out.printf("nearest: %.2f us, %.1f bytes per query; range: %.2f us, %.1f bytes per query (%d points found)%n",
+					nearestTime / 1e3 / queries, (double) nearestBytes / queries, rangeTime / 1e3 / queries, (double) rangeBytes / queries, found);
+		}
+		
+		// deleting points and inserting them again records no paths, so the only allocation is a new node for
+		// each deleted leaf, which is unlinked at once rather than left as a tombstone
+		for (int round = 0; round < 3; round++) {
+			long allocated = allocatedBytes();
+			long start = System.nanoTime();
+			for (int i = 0; i < queries; i++) {
+				large.delete(randomPoints[i]);
+				large.insert(randomPoints[i]);
+			}
+			long updateTime = System.nanoTime() - start;
+			long updateBytes = allocatedBytes() - allocated;
+			System.out.printf("delete and insert: %.2f us, %.1f bytes per pair%n",
+					updateTime / 1e3 / queries, (double) updateBytes / queries);
+		}
+		
+		// the same queries as one batch each, checked against the answers one at a time
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime();
+			Point2D[] nearest = large.nearestAll(nearestQueries);
+			long nearestTime = System.nanoTime() - start;
+			start = System.nanoTime();
+			List<Iterable<Point2D>> ranges = large.rangeAll(rangeQueries);
+			long rangeTime = System.nanoTime() - start;
+			boolean same = true;
+			for (int i = 0; i < queries; i += 97) {
+				same &= nearest[i].equals(large.nearest(nearestQueries[i]))
+						&& ranges.get(i).equals(large.range(rangeQueries[i]));
+			}
+			System.out.printf("nearestAll: %.2f us, rangeAll: %.2f us per query on %d cores, same answers: %b%n",
+					nearestTime / 1e3 / queries, rangeTime / 1e3 / queries, Runtime.getRuntime().availableProcessors(), same);
+		}
+	}
+	
+	// bytes allocated by the current thread so far, or 0 where the JVM does not report it
+	private static long allocatedBytes() {
+		var threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
 	}
 }
 
+// Nodes are deleted by marking them as tombstones, which queries skip. Every node counts the nodes and the live
+// points in its subtree, and the tree rebuilds subtrees scapegoat-style to keep its depth O(log n): after an insert
+// lands deeper than log base 1/ALPHA of the node count, the lowest ancestor whose child on the path holds more than
+// ALPHA of its nodes is rebuilt; after a delete leaves the smallest subtree on its path with more tombstones than live points,
+// that subtree is rebuilt without them. Rebuilding k nodes is paid for by the k inserts or deletes since they were
+// last balanced, so updates take O(log^2 n) amortized time, without ever stopping to rebuild the whole tree
+// unless it is the root that went out of balance.
 class KdTreeNode {
 	
+	private static final double ALPHA = 0.7;
+	
 	private Point2D point;
 	private boolean isXAxis;
 	private KdTreeNode leftChild;
 	private KdTreeNode rightChild;
 	
+	// the coordinates of point, kept here so queries do not have to follow the reference
+	private final double x;
+	private final double y;
+	
+	// tombstone flag, and the number of nodes and of live points in this subtree
+	private boolean deleted;
+	private int size;
+	private int live;
+	
 	public KdTreeNode(Point2D point, boolean isXAxis) {
 		this.point = point;
 		this.isXAxis = isXAxis;
+		this.x = point.x();
+		this.y = point.y();
+		this.size = 1;
+		this.live = 1;
+	}
+	
+	public KdTreeNode(Point2D point, boolean isXAxis, KdTreeNode leftChild, KdTreeNode rightChild) {
+		this(point, isXAxis);
+		this.leftChild = leftChild;
+		this.rightChild = rightChild;
+		this.size += sizeOf(leftChild) + sizeOf(rightChild);
+		this.live += liveCountOf(leftChild) + liveCountOf(rightChild);
 	}
 	
-	public boolean insert(Point2D point) {
-		if (this.point.equals(point)) return false;
-		boolean isLeft = this.isToTheLeft(point);
-		if (isLeft) {
-			if (this.leftChild == null) {
-				this.leftChild = new KdTreeNode(point, !this.isXAxis);
-				return true;
-			} else {
-				return this.leftChild.insert(point);
+	public int liveCount() {
+		return this.live;
+	}
+	
+	// inserts the point into the tree with the given root, which may be null, and returns the new root;
+	// no path is recorded: the counts are fixed on a second walk down, once it is known the point is new,
+	// and a third walk looks for a scapegoat only when the new node lands too deep
+	public static KdTreeNode insert(KdTreeNode root, Point2D point) {
+		if (root == null) return new KdTreeNode(point, true);
+		
+		int depth = 0;
+		KdTreeNode node = root;
+		while (true) {
+			if (node.point.equals(point)) {
+				if (!node.deleted) return root;
+				node.deleted = false;
+				++node.live;
+				addToAncestors(root, point, 0, 1);
+				return root;
 			}
-		} else {
-			if (this.rightChild == null) {
-				this.rightChild = new KdTreeNode(point, !this.isXAxis);
-				return true;
-			} else {
-				return this.rightChild.insert(point);
+			
+			KdTreeNode child = node.isToTheLeft(point) ? node.leftChild : node.rightChild;
+			if (child == null) break;
+			node = child;
+			++depth;
+		}
+		
+		KdTreeNode inserted = new KdTreeNode(point, !node.isXAxis);
+		if (node.isToTheLeft(point)) node.leftChild = inserted;
+		else node.rightChild = inserted;
+		addToAncestors(root, point, 1, 1);
+		
+		// the new node is at ++depth edges from the root; past the bound some ancestor must be out of balance
+		if (++depth <= Math.log(root.size) / Math.log(1 / ALPHA)) return root;
+		KdTreeNode parent = null;
+		KdTreeNode scapegoat = null;
+		KdTreeNode scapegoatParent = null;
+		node = root;
+		while (node != inserted) {
+			KdTreeNode child = node.isToTheLeft(point) ? node.leftChild : node.rightChild;
+			if (child.size > ALPHA * node.size) {
+				scapegoat = node;
+				scapegoatParent = parent;
 			}
+			parent = node;
+			node = child;
 		}
+		if (scapegoat == null) return root;
+		return replace(root, scapegoatParent, scapegoat, scapegoat.rebuild());
+	}
+	
+	// deletes the point from the tree with the given root and returns the new root, which is null once it is empty
+	public static KdTreeNode delete(KdTreeNode root, Point2D point) {
+		KdTreeNode deleted = root;
+		while (deleted != null && !deleted.point.equals(point)) {
+			deleted = deleted.isToTheLeft(point) ? deleted.leftChild : deleted.rightChild;
+		}
+		if (deleted == null || deleted.deleted) return root;
+		
+		// walks down again to take the point off the live counts, remembering the smallest subtree on the way
+		// that is left with more tombstones than live points
+		deleted.deleted = true;
+		KdTreeNode parent = null;
+		KdTreeNode sparse = null;
+		KdTreeNode sparseParent = null;
+		KdTreeNode node = root;
+		while (true) {
+			--node.live;
+			if (2 * node.live < node.size) {
+				sparse = node;
+				sparseParent = parent;
+			}
+			if (node == deleted) break;
+			parent = node;
+			node = node.isToTheLeft(point) ? node.leftChild : node.rightChild;
+		}
+		if (sparse == null) return root;
+		return replace(root, sparseParent, sparse, sparse.rebuild());
 	}
 	
 	public boolean contains(Point2D point) {
-		if (this.point.equals(point)) return true;
-		boolean isLeft = this.isToTheLeft(point);
-		if (isLeft && this.leftChild != null) return this.leftChild.contains(point);
-		else if (!isLeft && this.rightChild != null) return this.rightChild.contains(point);
+		KdTreeNode node = this;
+		while (node != null) {
+			if (node.point.equals(point)) return !node.deleted;
+			node = node.isToTheLeft(point) ? node.leftChild : node.rightChild;
+		}
 		return false;
 	}
 	
@@ -111,15 +422,30 @@ class KdTreeNode {
 	}
 	
 	public Point2D nearestNeighbor(Point2D point) {
-		return this.nearestNeighbor(point, Double.MAX_VALUE, null, new RectHV(0, 0, 1, 1)).second;
+		return this.nearestNeighbor(point.x(), point.y(), null, 0, 0, 1, 1);
 	}
 	
 	public List<Point2D> rangeSearch(RectHV rangeRect) {
 		List<Point2D> intersections = new ArrayList<>();
-		this.rangeSearch(rangeRect, new RectHV(0, 0, 1, 1), intersections);
+		this.rangeSearch(rangeRect.xmin(), rangeRect.ymin(), rangeRect.xmax(), rangeRect.ymax(), 0, 0, 1, 1, intersections);
 		return intersections;
 	}
 	
+	public List<Point2D> kNearestNeighbors(Point2D point, int k) {
+		Comparator<Point2D> byDistance = Comparator.comparingDouble(candidate -> candidate.distanceSquaredTo(point));
+		PriorityQueue<Point2D> candidates = new PriorityQueue<>(byDistance.reversed());
+		this.kNearestNeighbors(point, k, candidates, 0, 0, 1, 1);
+		List<Point2D> neighbors = new ArrayList<>(candidates);
+		neighbors.sort(byDistance);
+		return neighbors;
+	}
+	
+	public List<Point2D> radiusSearch(Point2D center, double radius) {
+		List<Point2D> neighbors = new ArrayList<>();
+		this.radiusSearch(center.x(), center.y(), radius * radius, 0, 0, 1, 1, neighbors);
+		return neighbors;
+	}
+	
 	private void draw(RectHV currentRect) {
 		Pair<RectHV, RectHV> boundaries = this.getBoundaryRects(currentRect, this.point.x(), this.point.y());
 		if (this.leftChild != null) this.leftChild.draw(boundaries.first);
@@ -133,72 +459,211 @@ class KdTreeNode {
 		boundaries.second.draw();
 		StdDraw.setPenColor(StdDraw.BLACK);
 		StdDraw.setPenRadius(StdDraw.getPenRadius() * 10);
-		this.point.draw();
+		if (!this.deleted) this.point.draw();
 		StdDraw.setPenRadius(StdDraw.getPenRadius() / 10);
 	}
 	
+	// points that tie on the splitting coordinate are ordered by the other one, so distinct points never tie
 	private boolean isToTheLeft(Point2D point) {
-		return this.isXAxis ? point.x() < this.point.x() : point.y() < this.point.y();
+		return this.isXAxis
+				? point.x() < this.x || point.x() == this.x && point.y() < this.y
+				: point.y() < this.y || point.y() == this.y && point.x() < this.x;
 	}
 	
-	private void rangeSearch(RectHV rangeRect, RectHV currentRect, List<Point2D> intersections) {
-		Pair<RectHV, RectHV> boundaries = this.getBoundaryRects(currentRect, this.point.x(), this.point.y());
-		RectHV leftRect = boundaries.first;
-		RectHV rightRect = boundaries.second;
-		
-		if (rangeRect.contains(this.point)) {
+	// the query paths below carry the node's rectangle as xmin, ymin, xmax, ymax and compare squared distances,
+	// so they allocate nothing; the left child's rectangle ends at the splitting line, where the right one starts
+	
+	private void rangeSearch(double qxmin, double qymin, double qxmax, double qymax,
+			double xmin, double ymin, double xmax, double ymax, List<Point2D> intersections) {
+		if (!this.deleted && this.x >= qxmin && this.x <= qxmax && this.y >= qymin && this.y <= qymax) {
 			intersections.add(this.point);
 		}
 		
-		if (rangeRect.intersects(leftRect) && this.leftChild != null) {
-			this.leftChild.rangeSearch(rangeRect, leftRect, intersections);
+		double leftXmax = this.isXAxis ? this.x : xmax;
+		double leftYmax = this.isXAxis ? ymax : this.y;
+		if (this.leftChild != null && intersects(qxmin, qymin, qxmax, qymax, xmin, ymin, leftXmax, leftYmax)) {
+			this.leftChild.rangeSearch(qxmin, qymin, qxmax, qymax, xmin, ymin, leftXmax, leftYmax, intersections);
 		}
 		
-		if (rangeRect.intersects(rightRect) && this.rightChild != null) {
-			this.rightChild.rangeSearch(rangeRect, rightRect, intersections);
+		double rightXmin = this.isXAxis ? this.x : xmin;
+		double rightYmin = this.isXAxis ? ymin : this.y;
+		if (this.rightChild != null && intersects(qxmin, qymin, qxmax, qymax, rightXmin, rightYmin, xmax, ymax)) {
+			this.rightChild.rangeSearch(qxmin, qymin, qxmax, qymax, rightXmin, rightYmin, xmax, ymax, intersections);
 		}
 	}
 	
-	private Pair<Double, Point2D> nearestNeighbor(Point2D point, double closestDist, Point2D closestPoint, RectHV currentRect) {
-		Pair<RectHV, RectHV> boundaries = this.getBoundaryRects(currentRect, this.point.x(), this.point.y());
-		RectHV leftRect = boundaries.first;
-		RectHV rightRect = boundaries.second;
-		
-		if (this.point.distanceTo(point) < closestDist) {
-			closestDist = this.point.distanceTo(point);
-			closestPoint = this.point;
+	// best is the closest point found so far, or null; its distance is recomputed from it instead of being returned alongside
+	private Point2D nearestNeighbor(double px, double py, Point2D best, double xmin, double ymin, double xmax, double ymax) {
+		double closestDist = distanceSquared(px, py, best);
+		double dist = distanceSquared(px, py, this.x, this.y);
+		if (!this.deleted && dist < closestDist) {
+			closestDist = dist;
+			best = this.point;
 		}
 		
-		double distLeftRect = leftRect.distanceTo(point);
-		double distRightRect = rightRect.distanceTo(point);
+		double leftXmax = this.isXAxis ? this.x : xmax;
+		double leftYmax = this.isXAxis ? ymax : this.y;
+		double rightXmin = this.isXAxis ? this.x : xmin;
+		double rightYmin = this.isXAxis ? ymin : this.y;
+		double distLeftRect = rectDistanceSquared(px, py, xmin, ymin, leftXmax, leftYmax);
+		double distRightRect = rectDistanceSquared(px, py, rightXmin, rightYmin, xmax, ymax);
 		if (distLeftRect < distRightRect) {
 			if (distLeftRect < closestDist && this.leftChild != null) {
-				Pair<Double, Point2D> result = this.leftChild.nearestNeighbor(point, closestDist, closestPoint, leftRect);
-				closestDist = result.first;
-				closestPoint = result.second;
+				best = this.leftChild.nearestNeighbor(px, py, best, xmin, ymin, leftXmax, leftYmax);
+				closestDist = distanceSquared(px, py, best);
 			}
 			
 			if (distRightRect < closestDist && this.rightChild != null) {
-				Pair<Double, Point2D> result = this.rightChild.nearestNeighbor(point, closestDist, closestPoint, rightRect);
-				closestDist = result.first;
-				closestPoint = result.second;
+				best = this.rightChild.nearestNeighbor(px, py, best, rightXmin, rightYmin, xmax, ymax);
 			}
 		} else {
 			if (distRightRect < closestDist && this.rightChild != null) {
-				Pair<Double, Point2D> result = this.rightChild.nearestNeighbor(point, closestDist, closestPoint, rightRect);
-				closestDist = result.first;
-				closestPoint = result.second;
+				best = this.rightChild.nearestNeighbor(px, py, best, rightXmin, rightYmin, xmax, ymax);
+				closestDist = distanceSquared(px, py, best);
 			}
 			
 			if (distLeftRect < closestDist && this.leftChild != null) {
-				Pair<Double, Point2D> result = this.leftChild.nearestNeighbor(point, closestDist, closestPoint, leftRect);
-				closestDist = result.first;
-				closestPoint = result.second;
+				best = this.leftChild.nearestNeighbor(px, py, best, xmin, ymin, leftXmax, leftYmax);
 			}
 		}
 		
+		return best;
+	}
+	
+	// candidates is a max-heap of the k closest points so far, so its head is the distance to beat
+	private void kNearestNeighbors(Point2D point, int k, PriorityQueue<Point2D> candidates,
+			double xmin, double ymin, double xmax, double ymax) {
+		if (this.deleted) {
+			// a tombstone only routes the search
+		} else if (candidates.size() < k) {
+			candidates.add(this.point);
+		} else if (this.point.distanceSquaredTo(point) < candidates.peek().distanceSquaredTo(point)) {
+			candidates.poll();
+			candidates.add(this.point);
+		}
 		
-		return new Pair<Double, Point2D>(closestDist, closestPoint);
+		double leftXmax = this.isXAxis ? this.x : xmax;
+		double leftYmax = this.isXAxis ? ymax : this.y;
+		double rightXmin = this.isXAxis ? this.x : xmin;
+		double rightYmin = this.isXAxis ? ymin : this.y;
+		double distLeftRect = rectDistanceSquared(point.x(), point.y(), xmin, ymin, leftXmax, leftYmax);
+		double distRightRect = rectDistanceSquared(point.x(), point.y(), rightXmin, rightYmin, xmax, ymax);
+		if (distLeftRect < distRightRect) {
+			if (this.leftChild != null && isCandidate(distLeftRect, point, k, candidates)) {
+				this.leftChild.kNearestNeighbors(point, k, candidates, xmin, ymin, leftXmax, leftYmax);
+			}
+			
+			if (this.rightChild != null && isCandidate(distRightRect, point, k, candidates)) {
+				this.rightChild.kNearestNeighbors(point, k, candidates, rightXmin, rightYmin, xmax, ymax);
+			}
+		} else {
+			if (this.rightChild != null && isCandidate(distRightRect, point, k, candidates)) {
+				this.rightChild.kNearestNeighbors(point, k, candidates, rightXmin, rightYmin, xmax, ymax);
+			}
+			
+			if (this.leftChild != null && isCandidate(distLeftRect, point, k, candidates)) {
+				this.leftChild.kNearestNeighbors(point, k, candidates, xmin, ymin, leftXmax, leftYmax);
+			}
+		}
+	}
+	
+	private static boolean isCandidate(double distSquared, Point2D point, int k, PriorityQueue<Point2D> candidates) {
+		return candidates.size() < k || distSquared < candidates.peek().distanceSquaredTo(point);
+	}
+	
+	private void radiusSearch(double cx, double cy, double radiusSquared,
+			double xmin, double ymin, double xmax, double ymax, List<Point2D> neighbors) {
+		if (!this.deleted && distanceSquared(cx, cy, this.x, this.y) <= radiusSquared) {
+			neighbors.add(this.point);
+		}
+		
+		double leftXmax = this.isXAxis ? this.x : xmax;
+		double leftYmax = this.isXAxis ? ymax : this.y;
+		if (this.leftChild != null && rectDistanceSquared(cx, cy, xmin, ymin, leftXmax, leftYmax) <= radiusSquared) {
+			this.leftChild.radiusSearch(cx, cy, radiusSquared, xmin, ymin, leftXmax, leftYmax, neighbors);
+		}
+		
+		double rightXmin = this.isXAxis ? this.x : xmin;
+		double rightYmin = this.isXAxis ? ymin : this.y;
+		if (this.rightChild != null && rectDistanceSquared(cx, cy, rightXmin, rightYmin, xmax, ymax) <= radiusSquared) {
+			this.rightChild.radiusSearch(cx, cy, radiusSquared, rightXmin, rightYmin, xmax, ymax, neighbors);
+		}
+	}
+	
+	static double distanceSquared(double px, double py, double qx, double qy) {
+		double dx = px - qx;
+		double dy = py - qy;
+		return dx * dx + dy * dy;
+	}
+	
+	// squared distance to best, or infinity if there is none yet
+	private static double distanceSquared(double px, double py, Point2D best) {
+		return best == null ? Double.POSITIVE_INFINITY : distanceSquared(px, py, best.x(), best.y());
+	}
+	
+	// same as RectHV.distanceSquaredTo
+	static double rectDistanceSquared(double px, double py, double xmin, double ymin, double xmax, double ymax) {
+		double dx = 0, dy = 0;
+		if (px < xmin) dx = px - xmin;
+		else if (px > xmax) dx = px - xmax;
+		if (py < ymin) dy = py - ymin;
+		else if (py > ymax) dy = py - ymax;
+		return dx * dx + dy * dy;
+	}
+	
+	// same as RectHV.intersects
+	static boolean intersects(double axmin, double aymin, double axmax, double aymax,
+			double bxmin, double bymin, double bxmax, double bymax) {
+		return axmax >= bxmin && aymax >= bymin && bxmax >= axmin && bymax >= aymin;
+	}
+	
+	// a balanced subtree of the live points below this node, splitting along the same axis as this node, or null
+	private KdTreeNode rebuild() {
+		if (this.live == 0) return null;
+		Point2D[] points = new Point2D[this.live];
+		this.collectLive(points, 0);
+		return new KdTreeBuilder(points, 0, points.length, this.isXAxis).invoke();
+	}
+	
+	private int collectLive(Point2D[] points, int count) {
+		if (!this.deleted) points[count++] = this.point;
+		if (this.leftChild != null) count = this.leftChild.collectLive(points, count);
+		if (this.rightChild != null) count = this.rightChild.collectLive(points, count);
+		return count;
+	}
+	
+	// adds to the counts of every node above the one holding the point
+	private static void addToAncestors(KdTreeNode root, Point2D point, int size, int live) {
+		KdTreeNode node = root;
+		while (!node.point.equals(point)) {
+			node.size += size;
+			node.live += live;
+			node = node.isToTheLeft(point) ? node.leftChild : node.rightChild;
+		}
+	}
+	
+	// puts the rebuilt subtree in the place of the given child of parent, or of the root when parent is null,
+	// and takes the dropped tombstones off the sizes of the nodes from the root down to parent
+	private static KdTreeNode replace(KdTreeNode root, KdTreeNode parent, KdTreeNode subtree, KdTreeNode rebuilt) {
+		if (parent == null) return rebuilt;
+		
+		int removed = subtree.size - sizeOf(rebuilt);
+		if (parent.leftChild == subtree) parent.leftChild = rebuilt;
+		else parent.rightChild = rebuilt;
+		KdTreeNode node = root;
+		while (true) {
+			node.size -= removed;
+			if (node == parent) return root;
+			node = node.isToTheLeft(subtree.point) ? node.leftChild : node.rightChild;
+		}
+	}
+	
+	private static int sizeOf(KdTreeNode node) {
+		return node == null ? 0 : node.size;
+	}
+	
+	private static int liveCountOf(KdTreeNode node) {
+		return node == null ? 0 : node.live;
 	}
 	
 	private Pair<RectHV, RectHV> getBoundaryRects(RectHV currentRect, double currentX, double currentY) {
@@ -222,4 +687,168 @@ class Pair<K, V> {
 		this.first = first;
 		this.second = second;
 	}
-}
\ No newline at end of file
+}
+
+// builds the subtree of points[from, to) whose root splits along the given axis; the coordinates are copied
+// into arrays that are permuted along with the points, so selecting medians reads them sequentially
+class KdTreeBuilder extends RecursiveTask<KdTreeNode> {
+
+	private static final long serialVersionUID = 1L;
+
+	// below this many points a task builds its subtree itself instead of forking
+	private static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+
+	private final Point2D[] points;
+	private final double[] xs;
+	private final double[] ys;
+	private final int from;
+	private final int to;
+	private final boolean isXAxis;
+
+	public KdTreeBuilder(Point2D[] points, int from, int to, boolean isXAxis) {
+		this(points, coordinates(points, true), coordinates(points, false), from, to, isXAxis);
+	}
+
+	private KdTreeBuilder(Point2D[] points, double[] xs, double[] ys, int from, int to, boolean isXAxis) {
+		this.points = points;
+		this.xs = xs;
+		this.ys = ys;
+		this.from = from;
+		this.to = to;
+		this.isXAxis = isXAxis;
+	}
+
+	@Override
+	protected KdTreeNode compute() {
+		if (this.to - this.from <= SEQUENTIAL_THRESHOLD) {
+			return this.build(this.from, this.to, this.isXAxis);
+		}
+
+		int median = this.partitionAtMedian(this.from, this.to, this.isXAxis);
+		KdTreeBuilder left = new KdTreeBuilder(this.points, this.xs, this.ys, this.from, median, !this.isXAxis);
+		KdTreeBuilder right = new KdTreeBuilder(this.points, this.xs, this.ys, median + 1, this.to, !this.isXAxis);
+		left.fork();
+		KdTreeNode rightChild = right.compute();
+		return new KdTreeNode(this.points[median], this.isXAxis, left.join(), rightChild);
+	}
+
+	private KdTreeNode build(int from, int to, boolean isXAxis) {
+		if (from >= to) return null;
+		int median = this.partitionAtMedian(from, to, isXAxis);
+		return new KdTreeNode(this.points[median], isXAxis,
+				this.build(from, median, !isXAxis), this.build(median + 1, to, !isXAxis));
+	}
+
+	// moves the median of points[from, to) along the axis to the returned index
+	private int partitionAtMedian(int from, int to, boolean isXAxis) {
+		int target = (from + to - 1) >>> 1;
+		select(this.xs, this.ys, this.points, from, to, target, isXAxis);
+		return target;
+	}
+
+	// the points sorted, without duplicates, so that no two points passed to select are equal
+	static Point2D[] distinctPoints(Point2D[] points) {
+		if (points == null) throw new IllegalArgumentException();
+		Point2D[] distinct = points.clone();
+		for (Point2D p : distinct) {
+			if (p == null) throw new IllegalArgumentException();
+		}
+		
+		Arrays.parallelSort(distinct);
+		int count = 0;
+		for (Point2D p : distinct) {
+			if (count == 0 || !p.equals(distinct[count - 1])) distinct[count++] = p;
+		}
+		return Arrays.copyOf(distinct, count);
+	}
+
+	// quickselect with three-way partitioning over the distinct points with coordinates xs and ys, and the
+	// points themselves unless null: afterwards the points in [from, target) are smaller than the one at target
+	// and those in (target, to) greater, ordering points that tie on the axis by the other coordinate the same
+	// way insert and contains do, which is the rule StaticKdTree follows as well
+	static void select(double[] xs, double[] ys, Point2D[] points, int from, int to, int target, boolean isXAxis) {
+		double[] values = isXAxis ? xs : ys;
+		double[] others = isXAxis ? ys : xs;
+		int low = from;
+		int high = to;
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		while (true) {
+			int p = low + random.nextInt(high - low);
+			double pivot = values[p];
+			double otherPivot = others[p];
+			int lessEnd = low;
+			int greaterStart = high;
+			int i = low;
+			while (i < greaterStart) {
+				double value = values[i];
+				double other = others[i];
+				if (value < pivot || value == pivot && other < otherPivot) swap(xs, ys, points, i++, lessEnd++);
+				else if (value > pivot || value == pivot && other > otherPivot) swap(xs, ys, points, i, --greaterStart);
+				else i++;
+			}
+			
+			// everything before low is below this pivot and everything from high on above it
+			if (target < lessEnd) high = lessEnd;
+			else if (target >= greaterStart) low = greaterStart;
+			else return;
+		}
+	}
+
+	private static void swap(double[] xs, double[] ys, Point2D[] points, int i, int j) {
+		if (points != null) {
+			Point2D point = points[i];
+			points[i] = points[j];
+			points[j] = point;
+		}
+		double x = xs[i];
+		xs[i] = xs[j];
+		xs[j] = x;
+		double y = ys[i];
+		ys[i] = ys[j];
+		ys[j] = y;
+	}
+
+	private static double[] coordinates(Point2D[] points, boolean isXAxis) {
+		double[] coordinates = new double[points.length];
+		for (int i = 0; i < points.length; i++) {
+			coordinates[i] = isXAxis ? points[i].x() : points[i].y();
+		}
+		return coordinates;
+	}
+}
+
+// runs a query for each index in order[from, to), splitting the range in halves across the fork-join pool;
+// each query writes its own result slot, so the halves never touch the same memory
+class KdTreeBatch extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	// below this many queries a task answers them itself instead of forking
+	private static final int SEQUENTIAL_THRESHOLD = 1 << 10;
+
+	private final int[] order;
+	private final int from;
+	private final int to;
+	private final IntConsumer query;
+
+	public KdTreeBatch(int[] order, int from, int to, IntConsumer query) {
+		this.order = order;
+		this.from = from;
+		this.to = to;
+		this.query = query;
+	}
+
+	@Override
+	protected void compute() {
+		if (this.to - this.from <= SEQUENTIAL_THRESHOLD) {
+			for (int i = this.from; i < this.to; i++) {
+				this.query.accept(this.order[i]);
+			}
+			return;
+		}
+		
+		int middle = (this.from + this.to) >>> 1;
+		invokeAll(new KdTreeBatch(this.order, this.from, middle, this.query),
+				new KdTreeBatch(this.order, middle, this.to, this.query));
+	}
+}
@@ -0,0 +1,316 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import edu.princeton.cs.algs4.Point2D;
+import edu.princeton.cs.algs4.RectHV;
+import edu.princeton.cs.algs4.StdRandom;
+
+// Read-only 2d-tree laid out in two coordinate arrays in Eytzinger order: the root is at index 0 and
+// the children of node i at 2i + 1 and 2i + 2, so the tree is complete, needs no child links and no node
+// or point objects, and the top levels that every query walks share a few cache lines.
+// Queries return new Point2D objects equal to the points the tree was built from.
+// Node i splits along x when its depth is even, and points that tie on the split are ordered by the
+// other coordinate, like KdTree, so contains follows a single path from the root. The dedup, quickselect
+// and distance helpers are the ones in KdTree.java, so both trees keep to the same tie rule.
+@SuppressWarnings("auxiliaryclass")
+public class StaticKdTree {
+
+	private final double[] xs;
+	private final double[] ys;
+
+	private StaticKdTree(double[] xs, double[] ys) {
+		this.xs = xs;
+		this.ys = ys;
+	}
+
+	// builds the tree of the distinct points in O(n log n), building large subtrees in parallel
+	public static StaticKdTree build(Point2D[] points) {
+		Point2D[] distinct = KdTreeBuilder.distinctPoints(points);
+		StaticKdTree tree = new StaticKdTree(new double[distinct.length], new double[distinct.length]);
+		if (distinct.length > 0) {
+			ForkJoinPool.commonPool().invoke(new StaticKdTreeBuilder(tree.xs, tree.ys, distinct));
+		}
+		return tree;
+	}
+
+	public boolean isEmpty() {
+		return this.xs.length == 0;
+	}
+
+	public int size() {
+		return this.xs.length;
+	}
+
+	public boolean contains(Point2D p) {
+		if (p == null) throw new IllegalArgumentException();
+		return this.contains(0, true, p.x(), p.y());
+	}
+
+	public Iterable<Point2D> range(RectHV rect) {
+		if (rect == null) throw new IllegalArgumentException();
+		List<Point2D> intersections = new ArrayList<>();
+		if (!this.isEmpty()) {
+			this.range(0, true, rect.xmin(), rect.ymin(), rect.xmax(), rect.ymax(), intersections);
+		}
+		return intersections;
+	}
+
+	public Point2D nearest(Point2D p) {
+		if (p == null) throw new IllegalArgumentException();
+		if (this.isEmpty()) return null;
+		double inf = Double.POSITIVE_INFINITY;
+		int nearest = this.nearest(0, true, p.x(), p.y(), 0, -inf, -inf, inf, inf);
+		return new Point2D(this.xs[nearest], this.ys[nearest]);
+	}
+
+	private boolean contains(int node, boolean isXAxis, double x, double y) {
+		while (node < this.xs.length) {
+			double nodeX = this.xs[node];
+			double nodeY = this.ys[node];
+			if (nodeX == x && nodeY == y) return true;
+			boolean isToTheLeft = isXAxis
+					? x < nodeX || x == nodeX && y < nodeY
+					: y < nodeY || y == nodeY && x < nodeX;
+			node = isToTheLeft ? 2 * node + 1 : 2 * node + 2;
+			isXAxis = !isXAxis;
+		}
+		return false;
+	}
+
+	// every coordinate in the left subtree is at most the split and every one in the right at least it
+	private void range(int node, boolean isXAxis, double qxmin, double qymin, double qxmax, double qymax, List<Point2D> intersections) {
+		double x = this.xs[node];
+		double y = this.ys[node];
+		if (x >= qxmin && x <= qxmax && y >= qymin && y <= qymax) {
+			intersections.add(new Point2D(x, y));
+		}
+
+		double split = isXAxis ? x : y;
+		int left = 2 * node + 1;
+		if (left < this.xs.length && (isXAxis ? qxmin : qymin) <= split) {
+			this.range(left, !isXAxis, qxmin, qymin, qxmax, qymax, intersections);
+		}
+		if (left + 1 < this.xs.length && (isXAxis ? qxmax : qymax) >= split) {
+			this.range(left + 1, !isXAxis, qxmin, qymin, qxmax, qymax, intersections);
+		}
+	}
+
+	// returns the index of the closest point, given the index of the closest one found so far;
+	// the node's region is carried as xmin, ymin, xmax, ymax, starting unbounded
+	private int nearest(int node, boolean isXAxis, double px, double py, int best,
+			double xmin, double ymin, double xmax, double ymax) {
+		double closestDist = KdTreeNode.distanceSquared(px, py, this.xs[best], this.ys[best]);
+		double dist = KdTreeNode.distanceSquared(px, py, this.xs[node], this.ys[node]);
+		if (dist < closestDist) {
+			closestDist = dist;
+			best = node;
+		}
+
+		int left = 2 * node + 1;
+		if (left >= this.xs.length) return best;
+		double leftXmax = isXAxis ? this.xs[node] : xmax;
+		double leftYmax = isXAxis ? ymax : this.ys[node];
+		double rightXmin = isXAxis ? this.xs[node] : xmin;
+		double rightYmin = isXAxis ? ymin : this.ys[node];
+		double distLeftRect = KdTreeNode.rectDistanceSquared(px, py, xmin, ymin, leftXmax, leftYmax);
+		double distRightRect = left + 1 < this.xs.length
+				? KdTreeNode.rectDistanceSquared(px, py, rightXmin, rightYmin, xmax, ymax) : Double.POSITIVE_INFINITY;
+		if (distLeftRect < distRightRect) {
+			if (distLeftRect < closestDist) {
+				best = this.nearest(left, !isXAxis, px, py, best, xmin, ymin, leftXmax, leftYmax);
+				closestDist = KdTreeNode.distanceSquared(px, py, this.xs[best], this.ys[best]);
+			}
+			if (distRightRect < closestDist) {
+				best = this.nearest(left + 1, !isXAxis, px, py, best, rightXmin, rightYmin, xmax, ymax);
+			}
+		} else {
+			if (distRightRect < closestDist) {
+				best = this.nearest(left + 1, !isXAxis, px, py, best, rightXmin, rightYmin, xmax, ymax);
+				closestDist = KdTreeNode.distanceSquared(px, py, this.xs[best], this.ys[best]);
+			}
+			if (distLeftRect < closestDist) {
+				best = this.nearest(left, !isXAxis, px, py, best, xmin, ymin, leftXmax, leftYmax);
+			}
+		}
+
+		return best;
+	}
+
+	// memory and query time against KdTree on the same random points
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		int queries = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+		Point2D[] points = new Point2D[n];
+		for (int i = 0; i < n; i++) {
+			points[i] = new Point2D(StdRandom.uniform(), StdRandom.uniform());
+		}
+		Point2D[] nearestQueries = new Point2D[queries];
+		RectHV[] rangeQueries = new RectHV[queries];
+		for (int i = 0; i < queries; i++) {
+			double x = StdRandom.uniform();
+			double y = StdRandom.uniform();
+			nearestQueries[i] = new Point2D(x, y);
+			rangeQueries[i] = new RectHV(x, y, Math.min(1, x + 0.001), Math.min(1, y + 0.001));
+		}
+
+		long before = usedMemory();
+		KdTree tree = KdTree.build(points);
+		long treeBytes = usedMemory() - before;
+		before = usedMemory();
+		StaticKdTree flat = StaticKdTree.build(points);
+		long flatBytes = usedMemory() - before;
+		System.out.printf("%d points: KdTree %,d bytes, StaticKdTree %,d bytes, besides the input points%n",
+				n, treeBytes, flatBytes);
+
+		// a grid, where every split ties with the other points of its row or column
+		int side = 1000;
+		Point2D[] grid = new Point2D[side * side];
+		for (int i = 0; i < grid.length; i++) {
+			grid[i] = new Point2D((double) (i / side) / side, (double) (i % side) / side);
+		}
+		KdTree gridTree = KdTree.build(grid);
+		StaticKdTree flatGrid = StaticKdTree.build(grid);
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < queries; i++) {
+				if (!gridTree.contains(grid[i * 7 % grid.length])) throw new IllegalStateException("KdTree lost a grid point.");
+			}
+			long treeContains = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int i = 0; i < queries; i++) {
+				if (!flatGrid.contains(grid[i * 7 % grid.length])) throw new IllegalStateException("StaticKdTree lost a grid point.");
+			}
+			long flatContains = System.nanoTime() - start;
+			System.out.printf("grid contains: KdTree %.2f us, StaticKdTree %.2f us%n",
+					treeContains / 1e3 / queries, flatContains / 1e3 / queries);
+		}
+
+		for (int round = 0; round < 3; round++) {
+			int mismatches = 0;
+			for (Point2D query : nearestQueries) {
+				if (tree.nearest(query).distanceSquaredTo(query) != flat.nearest(query).distanceSquaredTo(query)) ++mismatches;
+			}
+			if (mismatches > 0) throw new IllegalStateException(mismatches + " nearest points differ.");
+
+			long start = System.nanoTime();
+			for (Point2D query : nearestQueries) {
+				tree.nearest(query);
+			}
+			long treeNearest = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (Point2D query : nearestQueries) {
+				flat.nearest(query);
+			}
+			long flatNearest = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			long treeFound = 0;
+			for (RectHV query : rangeQueries) {
+				for (Point2D point : tree.range(query)) ++treeFound;
+			}
+			long treeRange = System.nanoTime() - start;
+			start = System.nanoTime();
+			long flatFound = 0;
+			for (RectHV query : rangeQueries) {
+				for (Point2D point : flat.range(query)) ++flatFound;
+			}
+			long flatRange = System.nanoTime() - start;
+			if (treeFound != flatFound) throw new IllegalStateException("Ranges found " + treeFound + " and " + flatFound + " points.");
+
+			System.out.printf("nearest: KdTree %.2f us, StaticKdTree %.2f us; range: KdTree %.2f us, StaticKdTree %.2f us%n",
+					treeNearest / 1e3 / queries, flatNearest / 1e3 / queries, treeRange / 1e3 / queries, flatRange / 1e3 / queries);
+		}
+	}
+
+	// heap in use after a collection; only an estimate, since the collector may not be exact
+	private static long usedMemory() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		var memory = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		return memory.getUsed();
+	}
+}
+
+// places the median of the coordinates in [from, to) at an Eytzinger index and builds its two subtrees,
+// forking large ones; the split position is the size of the left subtree of a complete tree, so the arrays have no holes
+@SuppressWarnings("auxiliaryclass")
+class StaticKdTreeBuilder extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	// below this many points a task builds its subtree itself instead of forking
+	private static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+
+	// the tree being filled in
+	private final double[] treeXs;
+	private final double[] treeYs;
+
+	// the coordinates of the points, permuted as medians are selected
+	private final double[] xs;
+	private final double[] ys;
+
+	private final int node;
+	private final int from;
+	private final int to;
+	private final boolean isXAxis;
+
+	public StaticKdTreeBuilder(double[] treeXs, double[] treeYs, Point2D[] points) {
+		this(treeXs, treeYs, new double[points.length], new double[points.length], 0, 0, points.length, true);
+		for (int i = 0; i < points.length; i++) {
+			this.xs[i] = points[i].x();
+			this.ys[i] = points[i].y();
+		}
+	}
+
+	private StaticKdTreeBuilder(double[] treeXs, double[] treeYs, double[] xs, double[] ys,
+			int node, int from, int to, boolean isXAxis) {
+		this.treeXs = treeXs;
+		this.treeYs = treeYs;
+		this.xs = xs;
+		this.ys = ys;
+		this.node = node;
+		this.from = from;
+		this.to = to;
+		this.isXAxis = isXAxis;
+	}
+
+	@Override
+	protected void compute() {
+		if (this.to - this.from <= SEQUENTIAL_THRESHOLD) {
+			this.build(this.node, this.from, this.to, this.isXAxis);
+			return;
+		}
+
+		int median = this.place(this.node, this.from, this.to, this.isXAxis);
+		invokeAll(new StaticKdTreeBuilder(this.treeXs, this.treeYs, this.xs, this.ys, 2 * this.node + 1, this.from, median, !this.isXAxis),
+				new StaticKdTreeBuilder(this.treeXs, this.treeYs, this.xs, this.ys, 2 * this.node + 2, median + 1, this.to, !this.isXAxis));
+	}
+
+	private void build(int node, int from, int to, boolean isXAxis) {
+		if (from >= to) return;
+		int median = this.place(node, from, to, isXAxis);
+		this.build(2 * node + 1, from, median, !isXAxis);
+		this.build(2 * node + 2, median + 1, to, !isXAxis);
+	}
+
+	// selects the point that splits [from, to) into the subtrees of a complete tree and stores it at node
+	private int place(int node, int from, int to, boolean isXAxis) {
+		int median = from + leftSubtreeSize(to - from);
+		KdTreeBuilder.select(this.xs, this.ys, null, from, to, median, isXAxis);
+		this.treeXs[node] = this.xs[median];
+		this.treeYs[node] = this.ys[median];
+		return median;
+	}
+
+	// number of nodes in the left subtree of a complete binary tree of n nodes
+	static int leftSubtreeSize(int n) {
+		if (n <= 1) return 0;
+		int height = 31 - Integer.numberOfLeadingZeros(n);
+		int full = (1 << height) - 1;
+		return (full - 1) / 2 + Math.min(n - full, 1 << (height - 1));
+	}
+}
@@ -0,0 +1,214 @@
+import java.lang.management.ManagementFactory;
+import java.util.SplittableRandom;
+
+import edu.princeton.cs.algs4.StdOut;
+
+// Drop-in alternative to Percolation that keeps its state in primitive arrays:
+// the open sites in a bitset and an inlined union-find with path halving and union by rank.
+// Every root carries a status byte instead of being wired to virtual top and bottom sites.
+public class CompactPercolation {
+
+	// status bits kept for every union-find root
+	private static final byte CONNECTED_TO_TOP = 1;
+	private static final byte CONNECTED_TO_BOTTOM = 2;
+
+	// size of the grid
+	private final int gridSize;
+
+	// number of open sites
+	private int numberOfOpenSites;
+
+	// one bit per site, set when the site is open
+	private final long[] openSites;
+
+	// union-find parent links and rank upper bounds
+	private final int[] parent;
+	private final byte[] rank;
+
+	// whether the component of each root touches the top and/or bottom row; only valid at roots
+	private final byte[] status;
+
+	// whether some component touches both the top and the bottom row
+	private boolean percolates;
+
+	// creates n-by-n grid, with all sites initially blocked
+	public CompactPercolation(int n) {
+		if (n <= 0) {
+			throw new IllegalArgumentException("Grid size cannot be smaller or equal to zero.");
+		} else if ((long) n * n > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Grid size cannot be larger than " + (int) Math.sqrt(Integer.MAX_VALUE) + ".");
+		}
+
+		int sites = n * n;
+		this.gridSize = n;
+		this.numberOfOpenSites = 0;
+		this.openSites = new long[(sites + 63) >>> 6];
+		this.parent = new int[sites];
+		this.rank = new byte[sites];
+		this.status = new byte[sites];
+		for (int i = 0; i < sites; i++) {
+			this.parent[i] = i;
+		}
+	}
+
+	// opens the site (row, col) if it is not open already
+	public void open(int row, int col) {
+		int index = this.getIndex(row, col);
+		if (this.isOpen(index)) {
+			return;
+		}
+
+		this.openSites[index >>> 6] |= 1L << index;
+		++this.numberOfOpenSites;
+
+		if (row == 1) {
+			this.status[index] |= CONNECTED_TO_TOP;
+		}
+
+		if (row == this.gridSize) {
+			this.status[index] |= CONNECTED_TO_BOTTOM;
+		}
+
+		int root = index;
+		if (row > 1 && this.isOpen(index - this.gridSize)) {
+			root = this.union(root, index - this.gridSize);
+		}
+
+		if (col > 1 && this.isOpen(index - 1)) {
+			root = this.union(root, index - 1);
+		}
+
+		if (row < this.gridSize && this.isOpen(index + this.gridSize)) {
+			root = this.union(root, index + this.gridSize);
+		}
+
+		if (col < this.gridSize && this.isOpen(index + 1)) {
+			root = this.union(root, index + 1);
+		}
+
+		if (this.status[root] == (CONNECTED_TO_TOP | CONNECTED_TO_BOTTOM)) {
+			this.percolates = true;
+		}
+	}
+
+	// is the site (row, col) open?
+	public boolean isOpen(int row, int col) {
+		return this.isOpen(this.getIndex(row, col));
+	}
+
+	// is the site (row, col) full?
+	public boolean isFull(int row, int col) {
+		int index = this.getIndex(row, col);
+		return this.isOpen(index) && (this.status[this.find(index)] & CONNECTED_TO_TOP) != 0;
+	}
+
+	// returns the number of open sites
+	public int numberOfOpenSites() {
+		return this.numberOfOpenSites;
+	}
+
+	// does the system percolate?
+	public boolean percolates() {
+		return this.percolates;
+	}
+
+	private boolean isOpen(int index) {
+		return (this.openSites[index >>> 6] & (1L << index)) != 0;
+	}
+
+	private int find(int index) {
+		while (this.parent[index] != index) {
+			this.parent[index] = this.parent[this.parent[index]];
+			index = this.parent[index];
+		}
+
+		return index;
+	}
+
+	// unions the component of root with the component of q and returns the new root,
+	// which inherits the status of both components
+	private int union(int root, int q) {
+		int rootQ = this.find(q);
+		if (root == rootQ) {
+			return root;
+		}
+
+		if (this.rank[root] < this.rank[rootQ]) {
+			int swap = root;
+			root = rootQ;
+			rootQ = swap;
+		} else if (this.rank[root] == this.rank[rootQ]) {
+			++this.rank[root];
+		}
+
+		this.parent[rootQ] = root;
+		this.status[root] |= this.status[rootQ];
+		return root;
+	}
+
+	private int getIndex(int row, int col) {
+		if (row < 1 || col < 1 || row > this.gridSize || col > this.gridSize) {
+			throw new IllegalArgumentException("Row and col must be between 1 and " + this.gridSize + ".");
+		}
+
+		return (col - 1) + (row - 1) * this.gridSize;
+	}
+
+	// compares memory footprint and throughput against Percolation
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int trials = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		// retained heap of each engine on an empty grid, measured around its construction
+		long before = usedMemory();
+		Percolation emptyPercolation = new Percolation(n);
+		long percolationBytes = usedMemory() - before;
+		before = usedMemory();
+		CompactPercolation emptyCompact = new CompactPercolation(n);
+		long compactBytes = usedMemory() - before;
+		StdOut.printf("memory:     Percolation %,d bytes, CompactPercolation %,d bytes (%.2fx)%n",
+				percolationBytes, compactBytes, percolationBytes / (double) compactBytes);
+		if (emptyPercolation.percolates() || emptyCompact.percolates()) {
+			throw new IllegalStateException("An empty grid cannot percolate.");
+		}
+
+		long percolationTime = 0;
+		long compactTime = 0;
+		SplittableRandom seeds = new SplittableRandom(1);
+		for (var t = 0; t < trials; t++) {
+			long seed = seeds.nextLong();
+
+			SplittableRandom random = new SplittableRandom(seed);
+			long start = System.nanoTime();
+			Percolation percolation = new Percolation(n);
+			while (!percolation.percolates()) {
+				percolation.open(random.nextInt(n) + 1, random.nextInt(n) + 1);
+			}
+			percolationTime += System.nanoTime() - start;
+
+			random = new SplittableRandom(seed);
+			start = System.nanoTime();
+			CompactPercolation compact = new CompactPercolation(n);
+			while (!compact.percolates()) {
+				compact.open(random.nextInt(n) + 1, random.nextInt(n) + 1);
+			}
+			compactTime += System.nanoTime() - start;
+
+			if (percolation.numberOfOpenSites() != compact.numberOfOpenSites()) {
+				throw new IllegalStateException("Implementations disagree on the percolation threshold.");
+			}
+		}
+
+		StdOut.printf("throughput: Percolation %.1f ms/trial, CompactPercolation %.1f ms/trial (%.2fx)%n",
+				percolationTime / 1e6 / trials, compactTime / 1e6 / trials, percolationTime / (double) compactTime);
+	}
+
+	// bytes of heap still in use once a few collection requests have run, so that the difference
+	// taken around a constructor is roughly what the new engine keeps alive
+	private static long usedMemory() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+}
@@ -0,0 +1,285 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import edu.princeton.cs.algs4.StdOut;
+
+// Thread-safe Percolation that many threads can open sites in at once without a lock.
+// The open sites live in an atomic bitset and the union-find is the lock-free variant of
+// Anderson and Woll: roots are linked with a compare-and-set, by a fixed random priority,
+// and finds halve paths with compare-and-set as well.
+// Status bits only ever grow, and every node carries a subset of the bits of its component,
+// so a query never has to wait for a concurrent union to finish. A thread that finds the site it
+// opens already open waits until the first opener has linked it, so open only returns once the site
+// is part of its component either way.
+public class ConcurrentPercolation {
+
+	// status bits kept for every union-find node
+	private static final int CONNECTED_TO_TOP = 1;
+	private static final int CONNECTED_TO_BOTTOM = 2;
+	private static final int BOTH = CONNECTED_TO_TOP | CONNECTED_TO_BOTTOM;
+
+	// size of the grid
+	private final int gridSize;
+
+	// number of open sites
+	private final AtomicInteger numberOfOpenSites;
+
+	// one bit per site, set when the site is open
+	private final AtomicLongArray openSites;
+
+	// one bit per site, set once the site is open and merged with its open neighbors
+	private final AtomicLongArray linkedSites;
+
+	// union-find parent links
+	private final AtomicIntegerArray parent;
+
+	// whether the component of each node touches the top and/or bottom row; complete at roots
+	private final AtomicIntegerArray status;
+
+	// whether some component touches both the top and the bottom row
+	private volatile boolean percolates;
+
+	// creates n-by-n grid, with all sites initially blocked
+	public ConcurrentPercolation(int n) {
+		if (n <= 0) {
+			throw new IllegalArgumentException("Grid size cannot be smaller or equal to zero.");
+		} else if ((long) n * n > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Grid size cannot be larger than " + (int) Math.sqrt(Integer.MAX_VALUE) + ".");
+		}
+
+		int sites = n * n;
+		this.gridSize = n;
+		this.numberOfOpenSites = new AtomicInteger();
+		this.openSites = new AtomicLongArray((sites + 63) >>> 6);
+		this.linkedSites = new AtomicLongArray((sites + 63) >>> 6);
+		this.parent = new AtomicIntegerArray(sites);
+		this.status = new AtomicIntegerArray(sites);
+		for (int i = 0; i < sites; i++) {
+			this.parent.set(i, i);
+		}
+	}
+
+	// opens the site (row, col) if it is not open already
+	public void open(int row, int col) {
+		int index = this.getIndex(row, col);
+		if (this.isOpen(index)) {
+			this.awaitLinked(index);
+			return;
+		}
+
+		// the status bits must be in place before the site can be seen open and linked by a neighbor
+		int flags = (row == 1 ? CONNECTED_TO_TOP : 0) | (row == this.gridSize ? CONNECTED_TO_BOTTOM : 0);
+		if (flags != 0) {
+			this.status.accumulateAndGet(index, flags, (a, b) -> a | b);
+		}
+
+		long mask = 1L << index;
+		int word = index >>> 6;
+		long bits;
+		do {
+			bits = this.openSites.get(word);
+			if ((bits & mask) != 0) {
+				this.awaitLinked(index);
+				return;
+			}
+		} while (!this.openSites.compareAndSet(word, bits, bits | mask));
+		this.numberOfOpenSites.incrementAndGet();
+
+		if (row > 1 && this.isOpen(index - this.gridSize)) {
+			this.union(index, index - this.gridSize);
+		}
+
+		if (col > 1 && this.isOpen(index - 1)) {
+			this.union(index, index - 1);
+		}
+
+		if (row < this.gridSize && this.isOpen(index + this.gridSize)) {
+			this.union(index, index + this.gridSize);
+		}
+
+		if (col < this.gridSize && this.isOpen(index + 1)) {
+			this.union(index, index + 1);
+		}
+
+		// a site on both rows percolates on its own
+		this.propagate(index, 0);
+		this.linkedSites.accumulateAndGet(word, mask, (a, b) -> a | b);
+	}
+
+	// is the site (row, col) open?
+	public boolean isOpen(int row, int col) {
+		return this.isOpen(this.getIndex(row, col));
+	}
+
+	// is the site (row, col) full?
+	public boolean isFull(int row, int col) {
+		int index = this.getIndex(row, col);
+		return this.isOpen(index) && (this.statusOf(index) & CONNECTED_TO_TOP) != 0;
+	}
+
+	// returns the number of open sites
+	public int numberOfOpenSites() {
+		return this.numberOfOpenSites.get();
+	}
+
+	// does the system percolate?
+	public boolean percolates() {
+		return this.percolates;
+	}
+
+	private boolean isOpen(int index) {
+		return (this.openSites.get(index >>> 6) & (1L << index)) != 0;
+	}
+
+	// waits for the thread that opened the site to finish merging it
+	private void awaitLinked(int index) {
+		while ((this.linkedSites.get(index >>> 6) & (1L << index)) == 0) {
+			Thread.onSpinWait();
+		}
+	}
+
+	// status bits gathered along the path to the root, retried until the root read is still a root;
+	// seeing both bits sets percolates before answering, in case the union that set them has not yet
+	private int statusOf(int index) {
+		int flags = 0;
+		while (true) {
+			flags |= this.status.get(index);
+			int next = this.parent.get(index);
+			if (next == index) {
+				if ((flags & BOTH) == BOTH) {
+					this.percolates = true;
+				}
+				return flags;
+			}
+			index = next;
+		}
+	}
+
+	private int find(int index) {
+		while (true) {
+			int next = this.parent.get(index);
+			if (next == index) {
+				return index;
+			}
+
+			int grandparent = this.parent.get(next);
+			if (grandparent != next) {
+				// the skipped node's bits move down first, so no query on this path loses them, and again
+				// once it is skipped, for any bits a concurrent propagate added to it in between
+				this.copyStatus(next, index);
+				if (this.parent.compareAndSet(index, next, grandparent)) {
+					this.copyStatus(next, index);
+				}
+			}
+			index = grandparent;
+		}
+	}
+
+	// ORs the status bits of the node from into the node to
+	private void copyStatus(int from, int to) {
+		int flags = this.status.get(from);
+		if ((flags & ~this.status.get(to)) != 0) {
+			this.status.accumulateAndGet(to, flags, (a, b) -> a | b);
+		}
+	}
+
+	private void union(int p, int q) {
+		while (true) {
+			int rootP = this.find(p);
+			int rootQ = this.find(q);
+			if (rootP == rootQ) {
+				return;
+			}
+
+			if (priority(rootP) > priority(rootQ)) {
+				int swap = rootP;
+				rootP = rootQ;
+				rootQ = swap;
+			}
+
+			if (this.parent.compareAndSet(rootP, rootP, rootQ)) {
+				this.propagate(rootQ, this.status.get(rootP));
+				return;
+			}
+		}
+	}
+
+	// adds the bits to the root of the component, following it if a concurrent union moves it
+	private void propagate(int index, int flags) {
+		while (true) {
+			int root = this.find(index);
+			int merged = this.status.accumulateAndGet(root, flags, (a, b) -> a | b);
+			if ((merged & BOTH) == BOTH) {
+				this.percolates = true;
+			}
+
+			if (this.parent.get(root) == root) {
+				return;
+			}
+			index = root;
+		}
+	}
+
+	// fixed random priority used to pick which root links under the other
+	private static int priority(int index) {
+		int h = index * 0x9E3779B9;
+		return (h ^ (h >>> 16)) ^ Integer.MIN_VALUE;
+	}
+
+	private int getIndex(int row, int col) {
+		if (row < 1 || col < 1 || row > this.gridSize || col > this.gridSize) {
+			throw new IllegalArgumentException("Row and col must be between 1 and " + this.gridSize + ".");
+		}
+
+		return (col - 1) + (row - 1) * this.gridSize;
+	}
+
+	// opens every site of an n-by-n grid in random order with 1, 2, 4, ... threads and reports the throughput
+	public static void main(String[] args) throws InterruptedException {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		int sites = n * n;
+
+		int[] order = new int[sites];
+		for (int i = 0; i < sites; i++) {
+			order[i] = i;
+		}
+		SplittableRandom random = new SplittableRandom(1);
+		for (int i = sites - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = order[i];
+			order[i] = order[j];
+			order[j] = swap;
+		}
+
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			ConcurrentPercolation percolation = new ConcurrentPercolation(n);
+			Thread[] workers = new Thread[threads];
+			for (int t = 0; t < threads; t++) {
+				int from = (int) ((long) sites * t / threads);
+				int to = (int) ((long) sites * (t + 1) / threads);
+				workers[t] = new Thread(() -> {
+					for (int i = from; i < to; i++) {
+						percolation.open(order[i] / n + 1, order[i] % n + 1);
+					}
+				});
+			}
+
+			long start = System.nanoTime();
+			for (Thread worker : workers) {
+				worker.start();
+			}
+			for (Thread worker : workers) {
+				worker.join();
+			}
+			long elapsed = System.nanoTime() - start;
+
+			if (percolation.numberOfOpenSites() != sites || !percolation.percolates() || !percolation.isFull(n, n)) {
+				throw new IllegalStateException("Fully open grid must percolate.");
+			}
+			StdOut.printf("%2d threads: %.1f M opens/s%n", threads, sites / (elapsed / 1e3));
+		}
+	}
+}
@@ -0,0 +1,385 @@
+import java.util.Arrays;
+
+import edu.princeton.cs.algs4.StdOut;
+
+// Percolation where sites can close again, answered offline: opens, closes and queries are
+// recorded as a script, and answers() replays it with divide and conquer over time.
+// Every site and every bond between two open sites is alive during an interval of the script;
+// the intervals are spread over a segment tree, which a depth-first walk applies to a union-find
+// with rollback (union by rank, no path compression), undoing them on the way back up.
+// A script of m changes is answered in O(m log m log n).
+public class DynamicPercolation {
+
+	// status bits kept for every union-find root
+	private static final byte CONNECTED_TO_TOP = 1;
+	private static final byte CONNECTED_TO_BOTTOM = 2;
+
+	// size of the grid
+	private final int gridSize;
+
+	// current state of the script
+	private final boolean[] openSites;
+	private int numberOfOpenSites;
+
+	// number of opens and closes recorded so far; the state after the t-th change is time t
+	private int time;
+
+	// time at which each open site was opened
+	private final int[] openedAt;
+
+	// alive intervals [from, to) of sites (second endpoint -1) and bonds
+	private final IntList intervalFrom = new IntList();
+	private final IntList intervalTo = new IntList();
+	private final IntList intervalSite = new IntList();
+	private final IntList intervalOther = new IntList();
+
+	// recorded queries: the time they were asked at, the site (-1 for percolates) and whether it was open
+	private final IntList queryTime = new IntList();
+	private final IntList querySite = new IntList();
+	private final IntList queryOpen = new IntList();
+
+	// creates n-by-n grid, with all sites initially blocked
+	public DynamicPercolation(int n) {
+		if (n <= 0) {
+			throw new IllegalArgumentException("Grid size cannot be smaller or equal to zero.");
+		}
+
+		this.gridSize = n;
+		this.openSites = new boolean[n * n];
+		this.openedAt = new int[n * n];
+	}
+
+	// opens the site (row, col) if it is not open already
+	public void open(int row, int col) {
+		int index = this.getIndex(row, col);
+		if (this.openSites[index]) {
+			return;
+		}
+
+		this.openSites[index] = true;
+		++this.numberOfOpenSites;
+		this.openedAt[index] = ++this.time;
+	}
+
+	// closes the site (row, col) if it is not closed already
+	public void close(int row, int col) {
+		int index = this.getIndex(row, col);
+		if (!this.openSites[index]) {
+			return;
+		}
+
+		// the site and its bonds to open neighbors were alive up to this change
+		++this.time;
+		this.addInterval(this.openedAt[index], this.time, index, -1);
+		for (int neighbor : this.neighbors(index)) {
+			if (neighbor >= 0 && this.openSites[neighbor]) {
+				this.addInterval(Math.max(this.openedAt[index], this.openedAt[neighbor]), this.time, index, neighbor);
+			}
+		}
+
+		this.openSites[index] = false;
+		--this.numberOfOpenSites;
+	}
+
+	// is the site (row, col) open at this point of the script?
+	public boolean isOpen(int row, int col) {
+		return this.openSites[this.getIndex(row, col)];
+	}
+
+	// returns the number of open sites at this point of the script
+	public int numberOfOpenSites() {
+		return this.numberOfOpenSites;
+	}
+
+	// records the question "is the site (row, col) full?" at this point of the script
+	// and returns its position in the array returned by answers()
+	public int queryFull(int row, int col) {
+		int index = this.getIndex(row, col);
+		return this.addQuery(index, this.openSites[index]);
+	}
+
+	// records the question "does the system percolate?" at this point of the script
+	// and returns its position in the array returned by answers()
+	public int queryPercolates() {
+		return this.addQuery(-1, true);
+	}
+
+	// answers every query recorded so far
+	public boolean[] answers() {
+		int leaves = this.time + 1;
+		IntList[] items = new IntList[4 * leaves];
+
+		// sites and bonds still alive stay alive until the end of the script
+		int recorded = this.intervalFrom.size();
+		for (int i = 0; i < recorded; i++) {
+			this.insert(items, 1, 0, leaves, this.intervalFrom.get(i), this.intervalTo.get(i), i);
+		}
+		int closedIntervals = recorded;
+		for (int index = 0; index < this.openSites.length; index++) {
+			if (!this.openSites[index]) {
+				continue;
+			}
+
+			this.addInterval(this.openedAt[index], leaves, index, -1);
+			for (int neighbor : this.neighbors(index)) {
+				if (neighbor > index && this.openSites[neighbor]) {
+					this.addInterval(Math.max(this.openedAt[index], this.openedAt[neighbor]), leaves, index, neighbor);
+				}
+			}
+		}
+		for (int i = closedIntervals; i < this.intervalFrom.size(); i++) {
+			this.insert(items, 1, 0, leaves, this.intervalFrom.get(i), this.intervalTo.get(i), i);
+		}
+
+		// queries grouped by the time they were asked at
+		int[] firstQuery = new int[leaves + 1];
+		for (int q = 0; q < this.queryTime.size(); q++) {
+			++firstQuery[this.queryTime.get(q) + 1];
+		}
+		for (int t = 0; t < leaves; t++) {
+			firstQuery[t + 1] += firstQuery[t];
+		}
+		int[] queriesByTime = new int[this.queryTime.size()];
+		int[] next = Arrays.copyOf(firstQuery, leaves);
+		for (int q = 0; q < this.queryTime.size(); q++) {
+			queriesByTime[next[this.queryTime.get(q)]++] = q;
+		}
+
+		boolean[] answers = new boolean[this.queryTime.size()];
+		Replay replay = new Replay(this.gridSize);
+		replay.walk(items, 1, 0, leaves, firstQuery, queriesByTime, answers);
+
+		// drop the intervals of the open sites, so the script can go on
+		this.intervalFrom.truncate(closedIntervals);
+		this.intervalTo.truncate(closedIntervals);
+		this.intervalSite.truncate(closedIntervals);
+		this.intervalOther.truncate(closedIntervals);
+		return answers;
+	}
+
+	private int addQuery(int site, boolean open) {
+		this.queryTime.add(this.time);
+		this.querySite.add(site);
+		this.queryOpen.add(open ? 1 : 0);
+		return this.queryTime.size() - 1;
+	}
+
+	private void addInterval(int from, int to, int site, int other) {
+		if (from >= to) {
+			return;
+		}
+
+		this.intervalFrom.add(from);
+		this.intervalTo.add(to);
+		this.intervalSite.add(site);
+		this.intervalOther.add(other);
+	}
+
+	// stores the interval at the canonical segment-tree nodes covering [from, to)
+	private void insert(IntList[] items, int node, int low, int high, int from, int to, int interval) {
+		if (to <= low || high <= from) {
+			return;
+		}
+
+		if (from <= low && high <= to) {
+			if (items[node] == null) {
+				items[node] = new IntList();
+			}
+			items[node].add(interval);
+			return;
+		}
+
+		int middle = (low + high) >>> 1;
+		this.insert(items, 2 * node, low, middle, from, to, interval);
+		this.insert(items, 2 * node + 1, middle, high, from, to, interval);
+	}
+
+	// indices of the four neighbors of a site, -1 where the grid ends
+	private int[] neighbors(int index) {
+		int row = index / this.gridSize;
+		int col = index % this.gridSize;
+		return new int[] {
+			row > 0 ? index - this.gridSize : -1,
+			col > 0 ? index - 1 : -1,
+			row < this.gridSize - 1 ? index + this.gridSize : -1,
+			col < this.gridSize - 1 ? index + 1 : -1
+		};
+	}
+
+	private int getIndex(int row, int col) {
+		if (row < 1 || col < 1 || row > this.gridSize || col > this.gridSize) {
+			throw new IllegalArgumentException("Row and col must be between 1 and " + this.gridSize + ".");
+		}
+
+		return (col - 1) + (row - 1) * this.gridSize;
+	}
+
+	// test client
+	public static void main(String[] args) {
+		DynamicPercolation percolation = new DynamicPercolation(3);
+		for (var row = 1; row <= 3; row++) {
+			percolation.open(row, 2);
+		}
+		int before = percolation.queryPercolates();
+		int middleFull = percolation.queryFull(2, 2);
+		percolation.close(2, 2);
+		int after = percolation.queryPercolates();
+		int bottomFull = percolation.queryFull(3, 2);
+		percolation.open(2, 2);
+		int repaired = percolation.queryPercolates();
+
+		boolean[] answers = percolation.answers();
+		StdOut.println("percolates before closing = " + answers[before] + ", (2, 2) full = " + answers[middleFull]);
+		StdOut.println("percolates after closing = " + answers[after] + ", (3, 2) full = " + answers[bottomFull]);
+		StdOut.println("percolates after reopening = " + answers[repaired]);
+	}
+
+	// union-find with rollback, walked over the segment tree
+	private class Replay {
+
+		private final int[] parent;
+		private final byte[] rank;
+		private final byte[] status;
+		private boolean percolates;
+
+		// undo log: node and its previous parent, rank and status; node -1 restores percolates
+		private final IntList history = new IntList();
+
+		Replay(int gridSize) {
+			int sites = gridSize * gridSize;
+			this.parent = new int[sites];
+			this.rank = new byte[sites];
+			this.status = new byte[sites];
+			for (int i = 0; i < sites; i++) {
+				this.parent[i] = i;
+			}
+		}
+
+		void walk(IntList[] items, int node, int low, int high, int[] firstQuery, int[] queriesByTime, boolean[] answers) {
+			int mark = this.history.size();
+			if (items[node] != null) {
+				for (int i = 0; i < items[node].size(); i++) {
+					this.apply(items[node].get(i));
+				}
+			}
+
+			if (high - low == 1) {
+				for (int i = firstQuery[low]; i < firstQuery[low + 1]; i++) {
+					int query = queriesByTime[i];
+					int site = DynamicPercolation.this.querySite.get(query);
+					if (site < 0) {
+						answers[query] = this.percolates;
+					} else {
+						answers[query] = DynamicPercolation.this.queryOpen.get(query) == 1
+								&& (this.status[this.find(site)] & CONNECTED_TO_TOP) != 0;
+					}
+				}
+			} else {
+				int middle = (low + high) >>> 1;
+				this.walk(items, 2 * node, low, middle, firstQuery, queriesByTime, answers);
+				this.walk(items, 2 * node + 1, middle, high, firstQuery, queriesByTime, answers);
+			}
+
+			this.rollback(mark);
+		}
+
+		private void apply(int interval) {
+			int site = DynamicPercolation.this.intervalSite.get(interval);
+			int other = DynamicPercolation.this.intervalOther.get(interval);
+			int root = this.find(site);
+			if (other < 0) {
+				// a site that is alive brings the rows it lies on into its component
+				int row = site / DynamicPercolation.this.gridSize;
+				byte flags = (byte) ((row == 0 ? CONNECTED_TO_TOP : 0)
+						| (row == DynamicPercolation.this.gridSize - 1 ? CONNECTED_TO_BOTTOM : 0));
+				if ((this.status[root] | flags) != this.status[root]) {
+					this.save(root);
+					this.status[root] |= flags;
+				}
+			} else {
+				int otherRoot = this.find(other);
+				if (root == otherRoot) {
+					return;
+				}
+
+				if (this.rank[root] < this.rank[otherRoot]) {
+					int swap = root;
+					root = otherRoot;
+					otherRoot = swap;
+				}
+
+				this.save(root);
+				this.save(otherRoot);
+				this.parent[otherRoot] = root;
+				this.status[root] |= this.status[otherRoot];
+				if (this.rank[root] == this.rank[otherRoot]) {
+					++this.rank[root];
+				}
+			}
+
+			if (!this.percolates && this.status[root] == (CONNECTED_TO_TOP | CONNECTED_TO_BOTTOM)) {
+				this.history.add(-1);
+				this.history.add(0);
+				this.history.add(0);
+				this.history.add(0);
+				this.percolates = true;
+			}
+		}
+
+		private int find(int index) {
+			while (this.parent[index] != index) {
+				index = this.parent[index];
+			}
+
+			return index;
+		}
+
+		private void save(int index) {
+			this.history.add(index);
+			this.history.add(this.parent[index]);
+			this.history.add(this.rank[index]);
+			this.history.add(this.status[index]);
+		}
+
+		private void rollback(int mark) {
+			while (this.history.size() > mark) {
+				int size = this.history.size();
+				int index = this.history.get(size - 4);
+				if (index < 0) {
+					this.percolates = false;
+				} else {
+					this.parent[index] = this.history.get(size - 3);
+					this.rank[index] = (byte) this.history.get(size - 2);
+					this.status[index] = (byte) this.history.get(size - 1);
+				}
+				this.history.truncate(size - 4);
+			}
+		}
+	}
+}
+
+// growable array of ints
+class IntList {
+
+	private int[] items = new int[8];
+	private int size;
+
+	public void add(int item) {
+		if (this.size == this.items.length) {
+			this.items = Arrays.copyOf(this.items, 2 * this.size);
+		}
+		this.items[this.size++] = item;
+	}
+
+	public int get(int index) {
+		return this.items[index];
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public void truncate(int size) {
+		this.size = size;
+	}
+}
@@ -0,0 +1,324 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.StdRandom;
+
+// Percolation whose open bits, union-find links and status bytes live in a memory-mapped file,
+// so the working set is paged by the operating system instead of held on the heap.
+// A checkpoint flushes the file and marks it consistent; reopening the same file resumes from it.
+public class MappedPercolation implements Closeable {
+
+	// size of the grid
+	private final int gridSize;
+
+	// the lattice engine, backed by the mapped file
+	private final PercolationLattice lattice;
+	private final MappedLatticeStorage storage;
+
+	// number of opens between automatic checkpoints, or 0 to only checkpoint on request
+	private final long checkpointInterval;
+	private long opensSinceCheckpoint;
+
+	// whether the state was loaded from an existing file
+	private final boolean resumed;
+
+	// creates an n-by-n grid stored in the given file, or resumes the grid already stored there
+	public MappedPercolation(int n, Path file) {
+		this(n, file, 0);
+	}
+
+	// same as above, checkpointing automatically after every checkpointInterval opened sites
+	public MappedPercolation(int n, Path file, long checkpointInterval) {
+		if (n <= 0) {
+			throw new IllegalArgumentException("Grid size cannot be smaller or equal to zero.");
+		} else if (file == null) {
+			throw new IllegalArgumentException("File cannot be null.");
+		} else if (checkpointInterval < 0) {
+			throw new IllegalArgumentException("Checkpoint interval cannot be negative.");
+		}
+
+		long sites = (long) n * n;
+		this.gridSize = n;
+		this.checkpointInterval = checkpointInterval;
+		this.resumed = Files.exists(file);
+		try {
+			this.storage = new MappedLatticeStorage(file, n, sites, sites);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		try {
+			this.lattice = new PercolationLattice(PercolationLattice.Mode.SITE, new int[] { n, n }, this.storage);
+
+			// the process stopped between checkpoints, so links and counters may lag behind the open bits
+			if (this.resumed && !this.storage.isConsistent()) {
+				this.lattice.rebuild();
+				this.checkpoint();
+			}
+		} catch (RuntimeException e) {
+			try {
+				this.storage.close();
+			} catch (UncheckedIOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw e;
+		}
+	}
+
+	// opens the site (row, col) if it is not open already
+	public void open(int row, int col) {
+		long index = this.getIndex(row, col);
+		if (this.lattice.isOpen(index)) {
+			return;
+		}
+
+		this.lattice.open(index);
+		if (this.checkpointInterval > 0 && ++this.opensSinceCheckpoint >= this.checkpointInterval) {
+			this.checkpoint();
+		}
+	}
+
+	// is the site (row, col) open?
+	public boolean isOpen(int row, int col) {
+		return this.lattice.isOpen(this.getIndex(row, col));
+	}
+
+	// is the site (row, col) full?
+	public boolean isFull(int row, int col) {
+		return this.lattice.isFull(this.getIndex(row, col));
+	}
+
+	// returns the number of open sites
+	public long numberOfOpenSites() {
+		return this.lattice.numberOfOpenElements();
+	}
+
+	// does the system percolate?
+	public boolean percolates() {
+		return this.lattice.percolates();
+	}
+
+	// was the grid loaded from an existing file?
+	public boolean isResumed() {
+		return this.resumed;
+	}
+
+	// flushes the grid to disk and marks the file consistent
+	public void checkpoint() {
+		this.storage.checkpoint();
+		this.opensSinceCheckpoint = 0;
+	}
+
+	// checkpoints the grid and releases the file
+	@Override
+	public void close() {
+		this.checkpoint();
+		this.storage.close();
+	}
+
+	private long getIndex(int row, int col) {
+		if (row < 1 || col < 1 || row > this.gridSize || col > this.gridSize) {
+			throw new IllegalArgumentException("Row and col must be between 1 and " + this.gridSize + ".");
+		}
+
+		return (col - 1) + (row - 1) * (long) this.gridSize;
+	}
+
+	// test client: opens random sites until the grid percolates, resuming from the file if it exists
+	public static void main(String[] args) {
+		int n = Integer.parseInt(args[0]);
+		Path file = Path.of(args[1]);
+		try (MappedPercolation percolation = new MappedPercolation(n, file, (long) n * n / 100 + 1)) {
+			StdOut.println((percolation.isResumed() ? "resumed" : "created") + " with "
+					+ percolation.numberOfOpenSites() + " open sites");
+			while (!percolation.percolates()) {
+				percolation.open(StdRandom.uniform(n) + 1, StdRandom.uniform(n) + 1);
+			}
+			StdOut.println("threshold = " + percolation.numberOfOpenSites() / ((double) n * n));
+		}
+	}
+}
+
+// lattice storage laid out in a single file: a header, the open bits, the parent links and the status bytes.
+// The file is mapped in fixed-size segments, since a single mapping cannot exceed 2 GB.
+class MappedLatticeStorage implements LatticeStorage {
+
+	private static final long MAGIC = 0x5045524353544f52L;
+	private static final int SEGMENT_BITS = 30;
+	private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+	private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	// header fields, as byte offsets
+	private static final int MAGIC_OFFSET = 0;
+	private static final int GRID_OFFSET = 8;
+	private static final int SITES_OFFSET = 16;
+	private static final int ELEMENTS_OFFSET = 24;
+	private static final int CONSISTENT_OFFSET = 32;
+	private static final int COUNTERS_OFFSET = 40;
+	private static final int HEADER_SIZE = 4096;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer[] segments;
+
+	// byte offsets of the regions
+	private final long openBitsOffset;
+	private final long parentsOffset;
+	private final long statusesOffset;
+
+	// whether the file has been written to since the last checkpoint
+	private boolean dirty;
+
+	public MappedLatticeStorage(Path file, int gridSize, long sites, long elements) throws IOException {
+		this.openBitsOffset = HEADER_SIZE;
+		this.parentsOffset = this.openBitsOffset + 8 * ((elements + 63) >>> 6);
+		this.statusesOffset = this.parentsOffset + 8 * sites;
+		long length = this.statusesOffset + sites;
+
+		boolean exists = Files.exists(file);
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			if (exists && this.channel.size() != length) {
+				throw new IllegalArgumentException("File " + file + " does not hold a grid of this size.");
+			}
+
+			this.segments = new MappedByteBuffer[(int) ((length + SEGMENT_MASK) >>> SEGMENT_BITS)];
+			for (int i = 0; i < this.segments.length; i++) {
+				long start = i * SEGMENT_SIZE;
+				this.segments[i] = this.channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(SEGMENT_SIZE, length - start));
+			}
+
+			if (!exists) {
+				this.putLong(MAGIC_OFFSET, MAGIC);
+				this.putLong(GRID_OFFSET, gridSize);
+				this.putLong(SITES_OFFSET, sites);
+				this.putLong(ELEMENTS_OFFSET, elements);
+				this.checkpoint();
+			} else if (this.getLong(MAGIC_OFFSET) != MAGIC || this.getLong(GRID_OFFSET) != gridSize
+					|| this.getLong(SITES_OFFSET) != sites || this.getLong(ELEMENTS_OFFSET) != elements) {
+				throw new IllegalArgumentException("File " + file + " does not hold a grid of this size.");
+			}
+		} catch (IOException | RuntimeException e) {
+			// nobody gets a reference to close the channel through
+			try {
+				this.channel.close();
+			} catch (IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw e;
+		}
+	}
+
+	// did the last run end with a checkpoint?
+	public boolean isConsistent() {
+		return this.getLong(CONSISTENT_OFFSET) != 0;
+	}
+
+	// flushes every segment, then marks the header consistent and flushes it
+	public void checkpoint() {
+		for (MappedByteBuffer segment : this.segments) {
+			segment.force();
+		}
+
+		this.putLong(CONSISTENT_OFFSET, 1);
+		this.segments[0].force();
+		this.dirty = false;
+	}
+
+	public void close() {
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// the consistent mark must reach the disk before any later write can
+	private void markDirty() {
+		if (!this.dirty) {
+			this.dirty = true;
+			this.putLong(CONSISTENT_OFFSET, 0);
+			this.segments[0].force();
+		}
+	}
+
+	private long getLong(long offset) {
+		return this.segments[(int) (offset >>> SEGMENT_BITS)].getLong((int) (offset & SEGMENT_MASK));
+	}
+
+	private void putLong(long offset, long value) {
+		this.segments[(int) (offset >>> SEGMENT_BITS)].putLong((int) (offset & SEGMENT_MASK), value);
+	}
+
+	private byte getByte(long offset) {
+		return this.segments[(int) (offset >>> SEGMENT_BITS)].get((int) (offset & SEGMENT_MASK));
+	}
+
+	private void putByte(long offset, byte value) {
+		this.segments[(int) (offset >>> SEGMENT_BITS)].put((int) (offset & SEGMENT_MASK), value);
+	}
+
+	@Override
+	public boolean isOpen(long element) {
+		return (this.getLong(this.openBitsOffset + 8 * (element >>> 6)) & (1L << element)) != 0;
+	}
+
+	@Override
+	public void setOpen(long element) {
+		this.markDirty();
+		long offset = this.openBitsOffset + 8 * (element >>> 6);
+		this.putLong(offset, this.getLong(offset) | (1L << element));
+	}
+
+	@Override
+	public long parent(long site) {
+		return this.getLong(this.parentsOffset + 8 * site);
+	}
+
+	@Override
+	public void setParent(long site, long parent) {
+		this.markDirty();
+		this.putLong(this.parentsOffset + 8 * site, parent);
+	}
+
+	@Override
+	public byte status(long site) {
+		return this.getByte(this.statusesOffset + site);
+	}
+
+	@Override
+	public void setStatus(long site, byte status) {
+		this.markDirty();
+		this.putByte(this.statusesOffset + site, status);
+	}
+
+	@Override
+	public long counter(int slot) {
+		return this.getLong(COUNTERS_OFFSET + 8 * slot);
+	}
+
+	@Override
+	public void setCounter(int slot, long value) {
+		this.markDirty();
+		this.putLong(COUNTERS_OFFSET + 8 * slot, value);
+	}
+
+	@Override
+	public void clearLinks() {
+		this.markDirty();
+		for (long offset = this.parentsOffset; offset < this.statusesOffset; offset += 8) {
+			this.putLong(offset, 0);
+		}
+
+		long end = this.statusesOffset + (this.statusesOffset - this.parentsOffset) / 8;
+		for (long offset = this.statusesOffset; offset < end; offset++) {
+			this.putByte(offset, (byte) 0);
+		}
+	}
+}
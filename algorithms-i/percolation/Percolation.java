@@ -1,7 +1,16 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
 import edu.princeton.cs.algs4.WeightedQuickUnionUF;
 
 public class Percolation {
 
+	// status bits kept for every union-find root
+	private static final byte CONNECTED_TO_TOP = 1;
+	private static final byte CONNECTED_TO_BOTTOM = 2;
+
 	// size of the grid
 	private final int gridSize;
 
@@ -14,6 +23,22 @@ public class Percolation {
 	// boolean array to indicate whether a site is open or not
 	private boolean[] openSites;
 
+	// whether the component of each root touches the top and/or bottom row; only valid at roots
+	private final byte[] status;
+
+	// number of open sites in the component of each root; only valid at roots
+	private final int[] clusterSize;
+
+	// whether some component touches both the top and the bottom row
+	private boolean percolates;
+
+	// number of components of open sites, and the size of the largest one
+	private int numberOfClusters;
+	private int largestClusterSize;
+
+	// listeners notified of merges, percolation and new largest clusters
+	private final List<PercolationListener> listeners = new ArrayList<>();
+
 	// creates n-by-n grid, with all sites initially blocked
 	public Percolation(int n) {
 		if (n <= 0) {
@@ -27,38 +52,129 @@ public class Percolation {
 			this.openSites[i] = false;
 		}
 
-		// connect first and last row to virtual cells
-		this.unionFind = new WeightedQuickUnionUF(n * n + 2);
-		for (int i = 0; i < n; i++) {
-			this.unionFind.union(this.getIndex(1, i + 1), n * n);
-			this.unionFind.union(this.getIndex(n, i + 1), n * n + 1);
-		}
+		// the top and bottom rows are tracked through status bits, so no virtual sites are needed
+		this.unionFind = new WeightedQuickUnionUF(n * n);
+		this.status = new byte[n * n];
+		this.clusterSize = new int[n * n];
 	}
 
 	// opens the site (row, col) if it is not open already
 	public void open(int row, int col) {
-		if (this.isOpen(row, col)) {
-			return;
+		int index = this.getIndex(row, col);
+		if (!this.openSites[index]) {
+			this.openSite(index);
 		}
+	}
 
-		int index = this.getIndex(row, col);
+	// opens the sites (rows[i], cols[i]) that are not open already; all of them are validated
+	// before any is opened, and they are opened in row-major order whatever order they are given in
+	public void openAll(int[] rows, int[] cols) {
+		if (rows == null || cols == null) {
+			throw new IllegalArgumentException("Rows and cols cannot be null.");
+		} else if (rows.length != cols.length) {
+			throw new IllegalArgumentException("Rows and cols must have the same length.");
+		}
+
+		int[] indices = new int[rows.length];
+		for (int i = 0; i < rows.length; i++) {
+			indices[i] = this.getIndex(rows[i], cols[i]);
+		}
+
+		Arrays.sort(indices);
+		for (int index : indices) {
+			if (!this.openSites[index]) {
+				this.openSite(index);
+			}
+		}
+	}
+
+	// opens every site whose bit is set in the mask, where bit i of word i / 64 stands for
+	// the site at row i / n + 1, col i % n + 1
+	public void openMask(long[] mask) {
+		if (mask == null) {
+			throw new IllegalArgumentException("Mask cannot be null.");
+		}
+
+		int sites = this.gridSize * this.gridSize;
+		for (int word = 0; word < mask.length; word++) {
+			if (mask[word] != 0 && ((long) word << 6) + 63 - Long.numberOfLeadingZeros(mask[word]) >= sites) {
+				throw new IllegalArgumentException("Mask cannot have bits beyond site " + (sites - 1) + ".");
+			}
+		}
+
+		for (int word = 0; word < mask.length; word++) {
+			long bits = mask[word];
+			while (bits != 0) {
+				int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				if (!this.openSites[index]) {
+					this.openSite(index);
+				}
+			}
+		}
+	}
+
+	// opens every site whose bit is set in the mask, numbered as in openMask(long[])
+	public void openMask(BitSet mask) {
+		if (mask == null) {
+			throw new IllegalArgumentException("Mask cannot be null.");
+		}
+
+		this.openMask(mask.toLongArray());
+	}
+
+	// opens a valid, blocked site and merges it with its open neighbors, checking each neighbor as usual;
+	// batches only call this in row-major order, so a site's left and upper neighbors have been dealt with
+	// before it, whether they were opened in this batch or earlier
+	private void openSite(int index) {
+		int row = index / this.gridSize + 1;
+		int col = index % this.gridSize + 1;
 		this.openSites[index] = true;
 		++this.numberOfOpenSites;
 
-		if (row > 1 && this.isOpen(row - 1, col)) {
-			this.unionFind.union(index, this.getIndex(row - 1, col));
+		byte flags = 0;
+		if (row == 1) {
+			flags |= CONNECTED_TO_TOP;
+		}
+
+		if (row == this.gridSize) {
+			flags |= CONNECTED_TO_BOTTOM;
+		}
+
+		// the new site starts as a cluster of its own and absorbs the clusters of its open neighbors
+		this.status[index] = flags;
+		this.clusterSize[index] = 1;
+		++this.numberOfClusters;
+
+		int root = index;
+		if (col > 1 && this.openSites[index - 1]) {
+			root = this.connect(root, index - 1);
+		}
+
+		if (row > 1 && this.openSites[index - this.gridSize]) {
+			root = this.connect(root, index - this.gridSize);
+		}
+
+		if (row < this.gridSize && this.openSites[index + this.gridSize]) {
+			root = this.connect(root, index + this.gridSize);
 		}
 
-		if (col > 1 && this.isOpen(row, col - 1)) {
-			this.unionFind.union(index, this.getIndex(row, col - 1));
+		if (col < this.gridSize && this.openSites[index + 1]) {
+			root = this.connect(root, index + 1);
 		}
 
-		if (row < this.gridSize && this.isOpen(row + 1, col)) {
-			this.unionFind.union(index, this.getIndex(row + 1, col));
+		if (this.clusterSize[root] > this.largestClusterSize) {
+			this.largestClusterSize = this.clusterSize[root];
+			for (PercolationListener listener : this.listeners) {
+				listener.onLargestCluster(this.largestClusterSize);
+			}
 		}
 
-		if (col < this.gridSize && this.isOpen(row, col + 1)) {
-			this.unionFind.union(index, this.getIndex(row, col + 1));
+		if (!this.percolates && this.status[root] == (CONNECTED_TO_TOP | CONNECTED_TO_BOTTOM)) {
+			this.percolates = true;
+			for (PercolationListener listener : this.listeners) {
+				listener.onPercolation(this.numberOfOpenSites);
+			}
 		}
 	}
 
@@ -69,7 +185,8 @@ public class Percolation {
 
 	// is the site (row, col) full?
 	public boolean isFull(int row, int col) {
-		return this.isOpen(row, col) && this.unionFind.find(this.getIndex(row, col)) == this.unionFind.find(this.gridSize * this.gridSize);
+		int index = this.getIndex(row, col);
+		return this.openSites[index] && (this.status[this.unionFind.find(index)] & CONNECTED_TO_TOP) != 0;
 	}
 
 	// returns the number of open sites
@@ -79,8 +196,54 @@ public class Percolation {
 
 	// does the system percolate?
 	public boolean percolates() {
-		return this.unionFind.find(this.gridSize * this.gridSize) == this.unionFind
-				.find(this.gridSize * this.gridSize + 1);
+		return this.percolates;
+	}
+
+	// returns the number of clusters of open sites
+	public int numberOfClusters() {
+		return this.numberOfClusters;
+	}
+
+	// returns the number of open sites in the largest cluster
+	public int largestClusterSize() {
+		return this.largestClusterSize;
+	}
+
+	// returns the mean number of open sites per cluster
+	public double meanClusterSize() {
+		return this.numberOfClusters == 0 ? 0 : this.numberOfOpenSites / (double) this.numberOfClusters;
+	}
+
+	// registers a listener for merge, percolation and largest-cluster events
+	public void addListener(PercolationListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("Listener cannot be null.");
+		}
+
+		this.listeners.add(listener);
+	}
+
+	// unions the cluster of root with the cluster of an open neighbor and returns the merged root,
+	// which inherits the status and size of both clusters
+	private int connect(int root, int neighbor) {
+		int neighborRoot = this.unionFind.find(neighbor);
+		if (neighborRoot == root) {
+			return root;
+		}
+
+		byte flags = (byte) (this.status[root] | this.status[neighborRoot]);
+		int size = this.clusterSize[root] + this.clusterSize[neighborRoot];
+		this.unionFind.union(root, neighborRoot);
+		root = this.unionFind.find(root);
+		this.status[root] = flags;
+		this.clusterSize[root] = size;
+		--this.numberOfClusters;
+
+		for (PercolationListener listener : this.listeners) {
+			listener.onMerge(size, this.numberOfClusters);
+		}
+
+		return root;
 	}
 
 	private int getIndex(int row, int col) {
@@ -0,0 +1,344 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.StdRandom;
+
+// Newman-Ziff sweep: every trial opens the sites of an n-by-n grid in a shuffled order,
+// one site at a time, and records the state of the grid after each of the n * n openings.
+// One trial therefore yields the whole curve over the occupation count instead of a single threshold.
+public class PercolationCurve {
+
+	private static final byte TOP = 1;
+	private static final byte BOTTOM = 2;
+	private static final byte OPEN = 4;
+
+	// size of the grid
+	private final int gridSize;
+
+	// number of trials
+	private final int trials;
+
+	// totals over all trials, indexed by the number of open sites
+	private final long[] percolatingTrials;
+	private final long[] largestClusterTotal;
+	private final long[] clusterCountTotal;
+	private final long[] squaredSizeTotal;
+
+	// total number of open sites at which each trial first percolated
+	private final long thresholdTotal;
+
+	// sweep trials on an n-by-n grid
+	public PercolationCurve(int n, int trials) {
+		this(n, trials, StdRandom.uniform(Integer.MAX_VALUE), Runtime.getRuntime().availableProcessors());
+	}
+
+	// sweep trials on an n-by-n grid, seeding every trial from the given seed and running them
+	// on the given number of threads; results do not depend on the thread count
+	public PercolationCurve(int n, int trials, long seed, int threads) {
+		if (n <= 0) {
+			throw new IllegalArgumentException("Grid size cannot be smaller or equal to zero.");
+		} else if (trials <= 0) {
+			throw new IllegalArgumentException("Number of trials cannot be smaller or equal to zero.");
+		} else if (threads <= 0) {
+			throw new IllegalArgumentException("Number of threads cannot be smaller or equal to zero.");
+		} else if ((long) n * n >= Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Grid size cannot be larger than " + (int) Math.sqrt(Integer.MAX_VALUE - 1) + ".");
+		}
+
+		this.gridSize = n;
+		this.trials = trials;
+
+		SplittableRandom root = new SplittableRandom(seed);
+		SplittableRandom[] streams = new SplittableRandom[trials];
+		for (var i = 0; i < trials; i++) {
+			streams[i] = root.split();
+		}
+
+		// every batch sums into its own counters; the totals are integers, so merging them
+		// gives the same result whichever way the trials were distributed
+		int batches = Math.min(threads, trials);
+		List<Callable<CurveAccumulator>> tasks = new ArrayList<>();
+		for (var b = 0; b < batches; b++) {
+			int from = (int) ((long) trials * b / batches);
+			int to = (int) ((long) trials * (b + 1) / batches);
+			tasks.add(() -> {
+				CurveAccumulator accumulator = new CurveAccumulator(n);
+				for (int i = from; i < to; i++) {
+					accumulator.sweep(streams[i]);
+				}
+				return accumulator;
+			});
+		}
+
+		List<CurveAccumulator> results = new ArrayList<>();
+		if (batches == 1) {
+			try {
+				results.add(tasks.get(0).call());
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(batches);
+			try {
+				for (Future<CurveAccumulator> future : pool.invokeAll(tasks)) {
+					results.add(future.get());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			} finally {
+				pool.shutdown();
+			}
+		}
+
+		CurveAccumulator total = results.get(0);
+		for (var i = 1; i < results.size(); i++) {
+			total.merge(results.get(i));
+		}
+
+		this.percolatingTrials = total.percolatingTrials;
+		this.largestClusterTotal = total.largestClusterTotal;
+		this.clusterCountTotal = total.clusterCountTotal;
+		this.squaredSizeTotal = total.squaredSizeTotal;
+		this.thresholdTotal = total.thresholdTotal;
+	}
+
+	// number of sites in the grid, i.e. the largest occupation count
+	public int sites() {
+		return this.gridSize * this.gridSize;
+	}
+
+	// sample mean of percolation threshold
+	public double meanThreshold() {
+		return this.thresholdTotal / (double) this.trials / this.sites();
+	}
+
+	// fraction of trials that percolate with the given number of open sites
+	public double crossingProbability(int openSites) {
+		this.validateOpenSites(openSites);
+		return this.percolatingTrials[openSites] / (double) this.trials;
+	}
+
+	// mean size of the largest cluster with the given number of open sites
+	public double largestClusterSize(int openSites) {
+		this.validateOpenSites(openSites);
+		return this.largestClusterTotal[openSites] / (double) this.trials;
+	}
+
+	// mean number of clusters with the given number of open sites
+	public double numberOfClusters(int openSites) {
+		this.validateOpenSites(openSites);
+		return this.clusterCountTotal[openSites] / (double) this.trials;
+	}
+
+	// mean size of the cluster containing a random open site, with the given number of open sites
+	public double meanClusterSize(int openSites) {
+		this.validateOpenSites(openSites);
+		if (openSites == 0) return 0;
+		return this.squaredSizeTotal[openSites] / (double) this.trials / openSites;
+	}
+
+	// probability that the grid percolates when every site is open with probability p
+	public double crossingProbabilityAt(double p) {
+		return Math.min(1, this.convolve(this.percolatingTrials, p) / this.trials);
+	}
+
+	// mean size of the largest cluster when every site is open with probability p
+	public double largestClusterSizeAt(double p) {
+		return this.convolve(this.largestClusterTotal, p) / this.trials;
+	}
+
+	// mean number of clusters when every site is open with probability p
+	public double numberOfClustersAt(double p) {
+		return this.convolve(this.clusterCountTotal, p) / this.trials;
+	}
+
+	// weights the per-count totals with the binomial distribution of the occupation count,
+	// walking out from the mode so the weights never underflow before they become negligible
+	private double convolve(long[] totals, double p) {
+		if (p < 0 || p > 1) {
+			throw new IllegalArgumentException("Probability must be between 0 and 1.");
+		}
+
+		int sites = this.sites();
+		if (p == 0) return totals[0];
+		if (p == 1) return totals[sites];
+
+		int mode = (int) Math.min(sites, Math.floor((sites + 1) * p));
+		double odds = p / (1 - p);
+		double weightedSum = totals[mode];
+		double weightSum = 1;
+
+		double weight = 1;
+		for (int k = mode; k < sites && weight > 1e-300; k++) {
+			weight *= (sites - k) / (k + 1.0) * odds;
+			weightedSum += weight * totals[k + 1];
+			weightSum += weight;
+		}
+
+		weight = 1;
+		for (int k = mode; k > 0 && weight > 1e-300; k--) {
+			weight *= k / (sites - k + 1.0) / odds;
+			weightedSum += weight * totals[k - 1];
+			weightSum += weight;
+		}
+
+		return weightedSum / weightSum;
+	}
+
+	private void validateOpenSites(int openSites) {
+		if (openSites < 0 || openSites > this.sites()) {
+			throw new IllegalArgumentException("Number of open sites must be between 0 and " + this.sites() + ".");
+		}
+	}
+
+	// test client
+	public static void main(String[] args) {
+		int n = Integer.parseInt(args[0]);
+		int trials = Integer.parseInt(args[1]);
+		PercolationCurve curve = new PercolationCurve(n, trials);
+		StdOut.println("mean threshold = " + curve.meanThreshold());
+		for (var i = 50; i <= 70; i++) {
+			double p = i / 100.0;
+			StdOut.println("p = " + p + ": crossing = " + curve.crossingProbabilityAt(p) + ", largest cluster = "
+					+ curve.largestClusterSizeAt(p) + ", clusters = " + curve.numberOfClustersAt(p));
+		}
+	}
+
+	// sums the per-count statistics of a batch of sweeps
+	private static class CurveAccumulator {
+
+		private final int gridSize;
+		private final long[] percolatingTrials;
+		private final long[] largestClusterTotal;
+		private final long[] clusterCountTotal;
+		private final long[] squaredSizeTotal;
+		private long thresholdTotal;
+
+		// merges performed and change in the sum of squared cluster sizes while opening the current site
+		private int merges;
+		private long squaredDelta;
+
+		// union-find state, reused by every sweep of the batch; a root stores minus its cluster size
+		private final int[] parent;
+		private final byte[] status;
+		private final int[] order;
+
+		CurveAccumulator(int gridSize) {
+			int sites = gridSize * gridSize;
+			this.gridSize = gridSize;
+			this.percolatingTrials = new long[sites + 1];
+			this.largestClusterTotal = new long[sites + 1];
+			this.clusterCountTotal = new long[sites + 1];
+			this.squaredSizeTotal = new long[sites + 1];
+			this.parent = new int[sites];
+			this.status = new byte[sites];
+			this.order = new int[sites];
+		}
+
+		void sweep(SplittableRandom random) {
+			int n = this.gridSize;
+			int sites = this.order.length;
+			for (int i = 0; i < sites; i++) {
+				this.order[i] = i;
+				this.status[i] = 0;
+			}
+
+			for (int i = sites - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int site = this.order[j];
+				this.order[j] = this.order[i];
+				this.order[i] = site;
+			}
+
+			boolean percolates = false;
+			int clusters = 0;
+			int largest = 0;
+			long squaredSizes = 0;
+			for (int k = 1; k <= sites; k++) {
+				int site = this.order[k - 1];
+				int row = site / n;
+				int col = site % n;
+				this.parent[site] = -1;
+				this.status[site] = (byte) (OPEN | (row == 0 ? TOP : 0) | (row == n - 1 ? BOTTOM : 0));
+				++clusters;
+				++squaredSizes;
+
+				int root = site;
+				if (row > 0) root = this.connect(root, site - n);
+				if (col > 0) root = this.connect(root, site - 1);
+				if (row < n - 1) root = this.connect(root, site + n);
+				if (col < n - 1) root = this.connect(root, site + 1);
+
+				int size = -this.parent[root];
+				clusters -= this.merges;
+				squaredSizes += this.squaredDelta;
+				this.merges = 0;
+				this.squaredDelta = 0;
+
+				largest = Math.max(largest, size);
+				if (!percolates && (this.status[root] & (TOP | BOTTOM)) == (TOP | BOTTOM)) {
+					percolates = true;
+					this.thresholdTotal += k;
+				}
+
+				if (percolates) ++this.percolatingTrials[k];
+				this.largestClusterTotal[k] += largest;
+				this.clusterCountTotal[k] += clusters;
+				this.squaredSizeTotal[k] += squaredSizes;
+			}
+		}
+
+		// joins the cluster of root with the cluster of neighbor, if open, and returns the new root
+		private int connect(int root, int neighbor) {
+			if ((this.status[neighbor] & OPEN) == 0) return root;
+			int other = this.find(neighbor);
+			if (other == root) return root;
+
+			long rootSize = -this.parent[root];
+			long otherSize = -this.parent[other];
+			this.squaredDelta += 2 * rootSize * otherSize;
+			++this.merges;
+
+			if (rootSize < otherSize) {
+				int swap = root;
+				root = other;
+				other = swap;
+			}
+
+			this.parent[root] = (int) -(rootSize + otherSize);
+			this.parent[other] = root;
+			this.status[root] |= this.status[other];
+			return root;
+		}
+
+		private int find(int site) {
+			while (this.parent[site] >= 0) {
+				int next = this.parent[site];
+				if (this.parent[next] >= 0) {
+					this.parent[site] = this.parent[next];
+				}
+				site = next;
+			}
+			return site;
+		}
+
+		void merge(CurveAccumulator other) {
+			for (int k = 0; k < this.percolatingTrials.length; k++) {
+				this.percolatingTrials[k] += other.percolatingTrials[k];
+				this.largestClusterTotal[k] += other.largestClusterTotal[k];
+				this.clusterCountTotal[k] += other.clusterCountTotal[k];
+				this.squaredSizeTotal[k] += other.squaredSizeTotal[k];
+			}
+			this.thresholdTotal += other.thresholdTotal;
+		}
+	}
+}
@@ -0,0 +1,440 @@
+import java.util.Arrays;
+
+import edu.princeton.cs.algs4.StdOut;
+
+// Percolation on a d-dimensional box lattice, with either sites or bonds as the elements that open.
+// Sites and bonds are addressed by long indices and stored through a LatticeStorage, so the lattice
+// is not limited by Java array bounds. The system percolates when a cluster connects the face with
+// coordinate 0 along the first axis to the opposite face.
+public class PercolationLattice {
+
+	public enum Mode { SITE, BOND }
+
+	// status bits kept for every union-find root; the remaining bits hold the rank
+	private static final int CONNECTED_TO_TOP = 1;
+	private static final int CONNECTED_TO_BOTTOM = 2;
+	private static final int FACE_BITS = CONNECTED_TO_TOP | CONNECTED_TO_BOTTOM;
+	private static final int RANK_SHIFT = 2;
+
+	// slots of the counters kept by the storage
+	static final int OPEN_COUNTER = 0;
+	static final int PERCOLATES_COUNTER = 1;
+
+	private final Mode mode;
+
+	// extent of every axis, and the distance between neighbors along it
+	private final int[] dims;
+	private final long[] strides;
+
+	// number of sites, and number of bonds along every axis
+	private final long sites;
+	private final long[] bondsPerAxis;
+
+	// number of elements that can be opened, either the sites or the bonds
+	private final long elements;
+
+	private final LatticeStorage storage;
+
+	// creates a lattice with the given extents, with all elements initially blocked
+	public PercolationLattice(Mode mode, int... dims) {
+		this(mode, dims, null);
+	}
+
+	PercolationLattice(Mode mode, int[] dims, LatticeStorage storage) {
+		validate(mode, dims);
+		this.mode = mode;
+		this.dims = dims.clone();
+		this.strides = new long[dims.length];
+		this.bondsPerAxis = new long[dims.length];
+
+		long count = 1;
+		for (int axis = dims.length - 1; axis >= 0; axis--) {
+			this.strides[axis] = count;
+			count = Math.multiplyExact(count, dims[axis]);
+		}
+		this.sites = count;
+
+		long bonds = 0;
+		for (int axis = 0; axis < dims.length; axis++) {
+			this.bondsPerAxis[axis] = this.sites / dims[axis] * (dims[axis] - 1);
+			bonds = Math.addExact(bonds, this.bondsPerAxis[axis]);
+		}
+		this.elements = mode == Mode.SITE ? this.sites : bonds;
+
+		this.storage = storage != null ? storage : new HeapLatticeStorage(this.sites, this.elements);
+
+		// a single layer is both the top and the bottom face, so any bond lattice spans it already
+		if (mode == Mode.BOND && dims[0] == 1) {
+			this.storage.setCounter(PERCOLATES_COUNTER, 1);
+		}
+	}
+
+	// checks the arguments of a lattice without allocating one
+	static void validate(Mode mode, int[] dims) {
+		if (mode == null || dims == null) {
+			throw new IllegalArgumentException("Mode and dimensions cannot be null.");
+		} else if (dims.length == 0) {
+			throw new IllegalArgumentException("Lattice must have at least one dimension.");
+		}
+
+		for (int extent : dims) {
+			if (extent <= 0) {
+				throw new IllegalArgumentException("Lattice extents cannot be smaller or equal to zero.");
+			}
+		}
+	}
+
+	// percolation mode
+	public Mode mode() {
+		return this.mode;
+	}
+
+	// extent of the given axis
+	public int extent(int axis) {
+		return this.dims[axis];
+	}
+
+	// number of axes
+	public int dimensions() {
+		return this.dims.length;
+	}
+
+	// number of sites
+	public long sites() {
+		return this.sites;
+	}
+
+	// number of elements that can be opened: the sites in site mode, the bonds in bond mode
+	public long elements() {
+		return this.elements;
+	}
+
+	// index of the site with the given 0-based coordinates
+	public long site(int... coordinates) {
+		if (coordinates == null || coordinates.length != this.dims.length) {
+			throw new IllegalArgumentException("Expected " + this.dims.length + " coordinates.");
+		}
+
+		long site = 0;
+		for (int axis = 0; axis < this.dims.length; axis++) {
+			if (coordinates[axis] < 0 || coordinates[axis] >= this.dims[axis]) {
+				throw new IllegalArgumentException("Coordinate " + axis + " must be between 0 and " + (this.dims[axis] - 1) + ".");
+			}
+			site += coordinates[axis] * this.strides[axis];
+		}
+
+		return site;
+	}
+
+	// index of the bond between the given site and its successor along the given axis
+	public long bond(long site, int axis) {
+		this.validateSite(site);
+		if (axis < 0 || axis >= this.dims.length) {
+			throw new IllegalArgumentException("Axis must be between 0 and " + (this.dims.length - 1) + ".");
+		} else if (this.coordinate(site, axis) == this.dims[axis] - 1) {
+			throw new IllegalArgumentException("Site has no successor along axis " + axis + ".");
+		}
+
+		long bond = 0;
+		for (int i = 0; i < axis; i++) {
+			bond += this.bondsPerAxis[i];
+		}
+
+		// bonds along an axis are numbered like the sites of a lattice one shorter on that axis
+		long local = 0;
+		for (int i = 0; i < this.dims.length; i++) {
+			long extent = i == axis ? this.dims[i] - 1 : this.dims[i];
+			local = local * extent + this.coordinate(site, i);
+		}
+
+		return bond + local;
+	}
+
+	// opens the element (a site or a bond, depending on the mode) if it is not open already
+	public void open(long element) {
+		this.validateElement(element);
+		if (this.storage.isOpen(element)) {
+			return;
+		}
+
+		this.storage.setOpen(element);
+		this.storage.setCounter(OPEN_COUNTER, this.storage.counter(OPEN_COUNTER) + 1);
+		this.connect(element);
+	}
+
+	// rebuilds the union-find links and the counters from the open bits alone,
+	// for storage whose links may be out of step with its open bits
+	void rebuild() {
+		this.storage.clearLinks();
+		this.storage.setCounter(OPEN_COUNTER, 0);
+		this.storage.setCounter(PERCOLATES_COUNTER, this.mode == Mode.BOND && this.dims[0] == 1 ? 1 : 0);
+		for (long element = 0; element < this.elements; element++) {
+			if (this.storage.isOpen(element)) {
+				this.storage.setCounter(OPEN_COUNTER, this.storage.counter(OPEN_COUNTER) + 1);
+				this.connect(element);
+			}
+		}
+	}
+
+	// unions an element that just opened with its open neighbors
+	private void connect(long element) {
+		long root;
+		if (this.mode == Mode.SITE) {
+			root = element;
+			for (int axis = 0; axis < this.dims.length; axis++) {
+				int coordinate = this.coordinate(element, axis);
+				if (coordinate > 0 && this.storage.isOpen(element - this.strides[axis])) {
+					root = this.union(root, element - this.strides[axis]);
+				}
+
+				if (coordinate < this.dims[axis] - 1 && this.storage.isOpen(element + this.strides[axis])) {
+					root = this.union(root, element + this.strides[axis]);
+				}
+			}
+		} else {
+			long bond = element;
+			int axis = 0;
+			while (bond >= this.bondsPerAxis[axis]) {
+				bond -= this.bondsPerAxis[axis++];
+			}
+
+			long site = 0;
+			for (int i = this.dims.length - 1; i >= 0; i--) {
+				long extent = i == axis ? this.dims[i] - 1 : this.dims[i];
+				site += bond % extent * this.strides[i];
+				bond /= extent;
+			}
+
+			root = this.union(this.find(site), site + this.strides[axis]);
+		}
+
+		if ((this.statusOf(root) & FACE_BITS) == FACE_BITS) {
+			this.storage.setCounter(PERCOLATES_COUNTER, 1);
+		}
+	}
+
+	// is the element open?
+	public boolean isOpen(long element) {
+		this.validateElement(element);
+		return this.storage.isOpen(element);
+	}
+
+	// is the site connected to the first face through open elements?
+	public boolean isFull(long site) {
+		this.validateSite(site);
+		if (this.mode == Mode.SITE && !this.storage.isOpen(site)) {
+			return false;
+		}
+
+		return (this.statusOf(this.find(site)) & CONNECTED_TO_TOP) != 0;
+	}
+
+	// returns the number of open elements
+	public long numberOfOpenElements() {
+		return this.storage.counter(OPEN_COUNTER);
+	}
+
+	// does the system percolate?
+	public boolean percolates() {
+		return this.storage.counter(PERCOLATES_COUNTER) != 0;
+	}
+
+	private int coordinate(long site, int axis) {
+		return (int) (site / this.strides[axis] % this.dims[axis]);
+	}
+
+	// face bits a site carries on its own
+	private int faceBits(long site) {
+		int row = this.coordinate(site, 0);
+		return (row == 0 ? CONNECTED_TO_TOP : 0) | (row == this.dims[0] - 1 ? CONNECTED_TO_BOTTOM : 0);
+	}
+
+	// face bits of a root: its own, plus whatever the components merged into it brought along
+	private int statusOf(long root) {
+		return (this.storage.status(root) | this.faceBits(root)) & FACE_BITS;
+	}
+
+	// a parent entry of 0 marks a root, so freshly allocated storage needs no initialization
+	private long parent(long site) {
+		long parent = this.storage.parent(site);
+		return parent == 0 ? site : parent - 1;
+	}
+
+	private long find(long site) {
+		while (true) {
+			long parent = this.parent(site);
+			if (parent == site) {
+				return site;
+			}
+
+			long grandparent = this.parent(parent);
+			if (grandparent == parent) {
+				return parent;
+			}
+
+			this.storage.setParent(site, grandparent + 1);
+			site = grandparent;
+		}
+	}
+
+	// unions the component of root with the component of q and returns the new root,
+	// which inherits the face bits of both components
+	private long union(long root, long q) {
+		long rootQ = this.find(q);
+		if (root == rootQ) {
+			return root;
+		}
+
+		int rank = (this.storage.status(root) & 0xFF) >>> RANK_SHIFT;
+		int rankQ = (this.storage.status(rootQ) & 0xFF) >>> RANK_SHIFT;
+		if (rank < rankQ) {
+			long swap = root;
+			root = rootQ;
+			rootQ = swap;
+			rank = rankQ;
+		} else if (rank == rankQ) {
+			++rank;
+		}
+
+		int status = this.statusOf(root) | this.statusOf(rootQ);
+		this.storage.setParent(rootQ, root + 1);
+		this.storage.setStatus(root, (byte) (rank << RANK_SHIFT | status));
+		return root;
+	}
+
+	private void validateSite(long site) {
+		if (site < 0 || site >= this.sites) {
+			throw new IllegalArgumentException("Site must be between 0 and " + (this.sites - 1) + ".");
+		}
+	}
+
+	private void validateElement(long element) {
+		if (element < 0 || element >= this.elements) {
+			throw new IllegalArgumentException("Element must be between 0 and " + (this.elements - 1) + ".");
+		}
+	}
+
+	// test client
+	public static void main(String[] args) {
+		PercolationLattice cube = new PercolationLattice(Mode.SITE, 3, 3, 3);
+		for (var row = 0; row < 3; row++) {
+			cube.open(cube.site(row, 1, 1));
+		}
+		StdOut.println("site cube percolates = " + cube.percolates());
+
+		PercolationLattice square = new PercolationLattice(Mode.BOND, 3, 3);
+		square.open(square.bond(square.site(0, 2), 0));
+		StdOut.println("(1, 2) full = " + square.isFull(square.site(1, 2)) + ", percolates = " + square.percolates());
+		square.open(square.bond(square.site(1, 2), 0));
+		StdOut.println("(2, 2) full = " + square.isFull(square.site(2, 2)) + ", percolates = " + square.percolates());
+	}
+}
+
+// backing store of a lattice: one open bit per element, and a parent link and status byte per site,
+// plus a few counters; every entry reads as zero until it is first written
+interface LatticeStorage {
+
+	boolean isOpen(long element);
+
+	void setOpen(long element);
+
+	long parent(long site);
+
+	void setParent(long site, long parent);
+
+	byte status(long site);
+
+	void setStatus(long site, byte status);
+
+	long counter(int slot);
+
+	void setCounter(int slot, long value);
+
+	// resets every parent link and status byte to zero
+	void clearLinks();
+}
+
+// heap storage split into fixed-size chunks, allocated on first write
+class HeapLatticeStorage implements LatticeStorage {
+
+	private static final int CHUNK_BITS = 20;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final long[][] openBits;
+	private final long[][] parents;
+	private final byte[][] statuses;
+	private final long[] counters;
+
+	public HeapLatticeStorage(long sites, long elements) {
+		this.openBits = new long[chunks((elements + 63) >>> 6)][];
+		this.parents = new long[chunks(sites)][];
+		this.statuses = new byte[chunks(sites)][];
+		this.counters = new long[2];
+	}
+
+	private static int chunks(long length) {
+		return Math.toIntExact((length + CHUNK_MASK) >>> CHUNK_BITS);
+	}
+
+	@Override
+	public boolean isOpen(long element) {
+		long[] chunk = this.openBits[(int) (element >>> (6 + CHUNK_BITS))];
+		return chunk != null && (chunk[(int) (element >>> 6) & CHUNK_MASK] & (1L << element)) != 0;
+	}
+
+	@Override
+	public void setOpen(long element) {
+		int index = (int) (element >>> (6 + CHUNK_BITS));
+		if (this.openBits[index] == null) {
+			this.openBits[index] = new long[CHUNK_SIZE];
+		}
+		this.openBits[index][(int) (element >>> 6) & CHUNK_MASK] |= 1L << element;
+	}
+
+	@Override
+	public long parent(long site) {
+		long[] chunk = this.parents[(int) (site >>> CHUNK_BITS)];
+		return chunk == null ? 0 : chunk[(int) site & CHUNK_MASK];
+	}
+
+	@Override
+	public void setParent(long site, long parent) {
+		int index = (int) (site >>> CHUNK_BITS);
+		if (this.parents[index] == null) {
+			this.parents[index] = new long[CHUNK_SIZE];
+		}
+		this.parents[index][(int) site & CHUNK_MASK] = parent;
+	}
+
+	@Override
+	public byte status(long site) {
+		byte[] chunk = this.statuses[(int) (site >>> CHUNK_BITS)];
+		return chunk == null ? 0 : chunk[(int) site & CHUNK_MASK];
+	}
+
+	@Override
+	public void setStatus(long site, byte status) {
+		int index = (int) (site >>> CHUNK_BITS);
+		if (this.statuses[index] == null) {
+			this.statuses[index] = new byte[CHUNK_SIZE];
+		}
+		this.statuses[index][(int) site & CHUNK_MASK] = status;
+	}
+
+	@Override
+	public long counter(int slot) {
+		return this.counters[slot];
+	}
+
+	@Override
+	public void setCounter(int slot, long value) {
+		this.counters[slot] = value;
+	}
+
+	@Override
+	public void clearLinks() {
+		Arrays.fill(this.parents, null);
+		Arrays.fill(this.statuses, null);
+	}
+}
@@ -0,0 +1,16 @@
+// Receives events from Percolation.open as they happen, so callers can follow the cluster
+// statistics without walking the grid. Every method does nothing by default.
+public interface PercolationListener {
+
+	// two clusters merged into one of the given size
+	default void onMerge(int mergedSize, int numberOfClusters) {
+	}
+
+	// the system percolated for the first time, after opening the given number of sites
+	default void onPercolation(int numberOfOpenSites) {
+	}
+
+	// the largest cluster grew to the given size
+	default void onLargestCluster(int largestClusterSize) {
+	}
+}
@@ -1,3 +1,9 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.ToDoubleFunction;
+
 import edu.princeton.cs.algs4.StdOut;
 import edu.princeton.cs.algs4.StdRandom;
 import edu.princeton.cs.algs4.StdStats;
@@ -9,23 +15,103 @@ public class PercolationStats {
 
 	// perform independent trials on an n-by-n grid
 	public PercolationStats(int n, int trials) {
+		this(n, trials, StdRandom.uniform(Integer.MAX_VALUE), Runtime.getRuntime().availableProcessors());
+	}
+
+	// perform independent trials on an n-by-n grid, seeding every trial from the given seed
+	// and running them on the given number of threads; results do not depend on the thread count
+	public PercolationStats(int n, int trials, long seed, int threads) {
+		this(validateTrials(trials), seed, threads, gridTrial(validateGridSize(n)));
+	}
+
+	// perform independent trials on a lattice with the given extents, in site or bond mode
+	public PercolationStats(PercolationLattice.Mode mode, int[] dims, int trials, long seed, int threads) {
+		this(validateTrials(trials), seed, threads, latticeTrial(mode, validateLattice(mode, dims)));
+	}
+
+	private PercolationStats(int trials, long seed, int threads, ToDoubleFunction<SplittableRandom> trial) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Number of threads cannot be smaller or equal to zero.");
+		}
+
+		// split the streams up front, in trial order, so trial i always sees the same stream
+		SplittableRandom root = new SplittableRandom(seed);
+		SplittableRandom[] streams = new SplittableRandom[trials];
+		for (var i = 0; i < trials; i++) {
+			streams[i] = root.split();
+		}
+
+		this.thresholds = new double[trials];
+		if (threads == 1) {
+			for (var i = 0; i < trials; i++) {
+				this.thresholds[i] = trial.applyAsDouble(streams[i]);
+			}
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				pool.invoke(new PercolationTrials(trial, streams, this.thresholds, 0, trials));
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+	private static int validateGridSize(int n) {
 		if (n <= 0) {
 			throw new IllegalArgumentException("Grid size cannot be smaller or equal to zero.");
-		} else if (trials <= 0) {
+		}
+
+		return n;
+	}
+
+	private static int validateTrials(int trials) {
+		if (trials <= 0) {
 			throw new IllegalArgumentException("Number of trials cannot be smaller or equal to zero.");
 		}
 
-		this.thresholds = new double[trials];
-		for (var i = 0; i < trials; i++) {
-			Percolation p = new Percolation(n);
-			while (!p.percolates()) {
-				int row = StdRandom.uniform(n) + 1;
-				int col = StdRandom.uniform(n) + 1;
-				p.open(row, col);
-			}
+		return trials;
+	}
 
-			thresholds[i] = p.numberOfOpenSites() / (double) (n * n);
+	// a trial on an n-by-n grid, for a size that was already validated
+	private static ToDoubleFunction<SplittableRandom> gridTrial(int n) {
+		return random -> runTrial(n, random);
+	}
+
+	// returns a copy of the extents, so later changes by the caller do not reach the trials
+	private static int[] validateLattice(PercolationLattice.Mode mode, int[] dims) {
+		PercolationLattice.validate(mode, dims);
+		if (mode == PercolationLattice.Mode.BOND && Arrays.stream(dims).allMatch(extent -> extent == 1)) {
+			throw new IllegalArgumentException("A bond lattice needs an extent larger than one to have any bonds.");
 		}
+
+		return dims.clone();
+	}
+
+	// a trial on a lattice, for a mode and extents that were already validated
+	private static ToDoubleFunction<SplittableRandom> latticeTrial(PercolationLattice.Mode mode, int[] dims) {
+		return random -> runTrial(new PercolationLattice(mode, dims), random);
+	}
+
+	// opens random sites until the grid percolates and returns the fraction of open sites
+	private static double runTrial(int n, SplittableRandom random) {
+		Percolation p = new Percolation(n);
+		while (!p.percolates()) {
+			int row = random.nextInt(n) + 1;
+			int col = random.nextInt(n) + 1;
+			p.open(row, col);
+		}
+
+		return p.numberOfOpenSites() / ((double) n * n);
+	}
+
+	// opens random elements until the lattice percolates and returns the fraction of open elements
+	private static double runTrial(PercolationLattice lattice, SplittableRandom random) {
+		long elements = lattice.elements();
+		while (!lattice.percolates()) {
+			lattice.open(random.nextLong(elements));
+		}
+
+		return lattice.numberOfOpenElements() / (double) elements;
 	}
 
 	// sample mean of percolation threshold
@@ -50,10 +136,54 @@ public class PercolationStats {
 
 	// test client (see below)
 	public static void main(String[] args) {
-		PercolationStats stats = new PercolationStats(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+		int n = Integer.parseInt(args[0]);
+		int trials = Integer.parseInt(args[1]);
+		PercolationStats stats;
+		if (args.length >= 4) {
+			stats = new PercolationStats(n, trials, Long.parseLong(args[2]), Integer.parseInt(args[3]));
+		} else {
+			stats = new PercolationStats(n, trials);
+		}
+
 		StdOut.println("mean = " + stats.mean());
 		StdOut.println("stddev = " + stats.stddev());
 		StdOut.println("95% confidence interval = [" + stats.confidenceLo() + ", " + stats.confidenceHi() + "]");
 	}
 
-}
\ No newline at end of file
+}
+
+class PercolationTrials extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	// below this many trials a task runs them itself instead of splitting further
+	private static final int SEQUENTIAL_THRESHOLD = 4;
+
+	private final ToDoubleFunction<SplittableRandom> trial;
+	private final SplittableRandom[] streams;
+	private final double[] thresholds;
+	private final int from;
+	private final int to;
+
+	public PercolationTrials(ToDoubleFunction<SplittableRandom> trial, SplittableRandom[] streams, double[] thresholds, int from, int to) {
+		this.trial = trial;
+		this.streams = streams;
+		this.thresholds = thresholds;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	protected void compute() {
+		if (this.to - this.from <= SEQUENTIAL_THRESHOLD) {
+			for (int i = this.from; i < this.to; i++) {
+				this.thresholds[i] = this.trial.applyAsDouble(this.streams[i]);
+			}
+			return;
+		}
+
+		int middle = (this.from + this.to) >>> 1;
+		invokeAll(new PercolationTrials(this.trial, this.streams, this.thresholds, this.from, middle),
+				new PercolationTrials(this.trial, this.streams, this.thresholds, middle, this.to));
+	}
+}
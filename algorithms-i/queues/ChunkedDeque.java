@@ -0,0 +1,290 @@
+import java.lang.management.ManagementFactory;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Deque with the same API as Deque, unrolled into a doubly linked list of fixed-size chunks.
+// Growing never copies items, and chunks emptied at either end go to a free-list to be reused,
+// so a queue that grows and shrinks around the same size stops allocating altogether.
+public class ChunkedDeque<Item> implements Iterable<Item> {
+
+	private static final int CHUNK_SIZE = 1 << 10;
+
+	// spare chunks kept for reuse; beyond this they are left to the garbage collector
+	private static final int MAX_SPARE_CHUNKS = 16;
+
+	// items live in head.items[first..], the chunks in between, and tail.items[..last)
+	private Chunk<Item> head;
+	private Chunk<Item> tail;
+	private int first;
+	private int last;
+	private int count;
+
+	// free-list of empty chunks, linked through next
+	private Chunk<Item> spare;
+	private int spareCount;
+
+	// number of structural changes, checked by iterators
+	private int modCount;
+
+    // construct an empty deque
+    public ChunkedDeque() {
+    	this.head = this.tail = new Chunk<>();
+    	this.first = this.last = CHUNK_SIZE / 2;
+    }
+
+    // is the deque empty?
+    public boolean isEmpty() {
+    	return this.count == 0;
+    }
+
+    // return the number of items on the deque
+    public int size() {
+    	return this.count;
+    }
+
+    // add the item to the front
+    public void addFirst(Item item) {
+    	if (item == null) {
+    		throw new IllegalArgumentException("Item cannot be null");
+    	}
+
+    	if (this.first == 0) {
+    		Chunk<Item> chunk = this.takeSpare();
+    		chunk.next = this.head;
+    		this.head.previous = chunk;
+    		this.head = chunk;
+    		this.first = CHUNK_SIZE;
+    	}
+
+    	this.head.items[--this.first] = item;
+    	++this.count;
+    	++this.modCount;
+    }
+
+    // add the item to the back
+    public void addLast(Item item) {
+    	if (item == null) {
+    		throw new IllegalArgumentException("Item cannot be null");
+    	}
+
+    	if (this.last == CHUNK_SIZE) {
+    		Chunk<Item> chunk = this.takeSpare();
+    		chunk.previous = this.tail;
+    		this.tail.next = chunk;
+    		this.tail = chunk;
+    		this.last = 0;
+    	}
+
+    	this.tail.items[this.last++] = item;
+    	++this.count;
+    	++this.modCount;
+    }
+
+    // remove and return the item from the front
+    @SuppressWarnings("unchecked")
+    public Item removeFirst() {
+    	if (this.count == 0) {
+    		throw new NoSuchElementException();
+    	}
+
+    	Item item = (Item) this.head.items[this.first];
+    	this.head.items[this.first++] = null;
+    	--this.count;
+    	++this.modCount;
+
+    	if (this.count == 0) {
+    		this.reset();
+    	} else if (this.first == CHUNK_SIZE) {
+    		Chunk<Item> emptied = this.head;
+    		this.head = emptied.next;
+    		this.head.previous = null;
+    		this.first = 0;
+    		this.putSpare(emptied);
+    	}
+
+    	return item;
+    }
+
+    // remove and return the item from the back
+    @SuppressWarnings("unchecked")
+    public Item removeLast() {
+    	if (this.count == 0) {
+    		throw new NoSuchElementException();
+    	}
+
+    	Item item = (Item) this.tail.items[--this.last];
+    	this.tail.items[this.last] = null;
+    	--this.count;
+    	++this.modCount;
+
+    	if (this.count == 0) {
+    		this.reset();
+    	} else if (this.last == 0) {
+    		Chunk<Item> emptied = this.tail;
+    		this.tail = emptied.previous;
+    		this.tail.next = null;
+    		this.last = CHUNK_SIZE;
+    		this.putSpare(emptied);
+    	}
+
+    	return item;
+    }
+
+    // return an iterator over items in order from front to back
+    public Iterator<Item> iterator() {
+    	return new ChunkedIterator();
+    }
+
+    // an empty deque keeps one chunk with both ends in the middle, so either end can grow
+    private void reset() {
+    	while (this.head != this.tail) {
+    		Chunk<Item> emptied = this.head;
+    		this.head = emptied.next;
+    		this.putSpare(emptied);
+    	}
+    	this.head.previous = null;
+    	this.first = this.last = CHUNK_SIZE / 2;
+    }
+
+    private Chunk<Item> takeSpare() {
+    	if (this.spare == null) {
+    		return new Chunk<>();
+    	}
+
+    	Chunk<Item> chunk = this.spare;
+    	this.spare = chunk.next;
+    	chunk.next = null;
+    	--this.spareCount;
+    	return chunk;
+    }
+
+    // the chunk's slots are already null, since every item was cleared as it was removed
+    private void putSpare(Chunk<Item> chunk) {
+    	if (this.spareCount == MAX_SPARE_CHUNKS) {
+    		return;
+    	}
+
+    	chunk.previous = null;
+    	chunk.next = this.spare;
+    	this.spare = chunk;
+    	++this.spareCount;
+    }
+
+    // unit testing, plus a throughput and allocation comparison against Deque and RingBufferDeque
+    public static void main(String[] args) {
+    	var queue = new ChunkedDeque<Integer>();
+    	queue.addFirst(1);
+    	queue.addFirst(2);
+    	queue.addFirst(3);
+    	queue.addLast(4);
+    	queue.addLast(5);
+    	queue.addLast(6);
+    	queue.removeFirst();
+    	queue.removeLast();
+    	for (int value : queue) {
+    		System.out.println(value);
+    	}
+
+    	// a backlog that repeatedly fills up to a few chunks and drains again
+    	int operations = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+    	int backlog = 4 * CHUNK_SIZE;
+    	Integer item = 42;
+    	for (var round = 0; round < 3; round++) {
+    		long allocated = allocatedBytes();
+    		long start = System.nanoTime();
+    		Deque<Integer> linked = new Deque<>();
+    		for (var i = 0; i < operations; i++) {
+    			if ((i / backlog & 1) == 0) {
+    				linked.addLast(item);
+    			} else {
+    				linked.removeFirst();
+    			}
+    		}
+    		long linkedTime = System.nanoTime() - start;
+    		long linkedBytes = allocatedBytes() - allocated;
+
+    		allocated = allocatedBytes();
+    		start = System.nanoTime();
+    		RingBufferDeque<Integer> ring = new RingBufferDeque<>();
+    		for (var i = 0; i < operations; i++) {
+    			if ((i / backlog & 1) == 0) {
+    				ring.addLast(item);
+    			} else {
+    				ring.removeFirst();
+    			}
+    		}
+    		long ringTime = System.nanoTime() - start;
+    		long ringBytes = allocatedBytes() - allocated;
+
+    		allocated = allocatedBytes();
+    		start = System.nanoTime();
+    		ChunkedDeque<Integer> chunked = new ChunkedDeque<>();
+    		for (var i = 0; i < operations; i++) {
+    			if ((i / backlog & 1) == 0) {
+    				chunked.addLast(item);
+    			} else {
+    				chunked.removeFirst();
+    			}
+    		}
+    		long chunkedTime = System.nanoTime() - start;
+    		long chunkedBytes = allocatedBytes() - allocated;
+
+    		System.out.printf("Deque: %.1f M ops/s, %,d bytes; RingBufferDeque: %.1f M ops/s, %,d bytes; ChunkedDeque: %.1f M ops/s, %,d bytes%n",
+    				operations / (linkedTime / 1e3), linkedBytes, operations / (ringTime / 1e3), ringBytes,
+    				operations / (chunkedTime / 1e3), chunkedBytes);
+    	}
+    }
+
+    // bytes allocated by the current thread so far, or 0 where the JVM does not report it
+    private static long allocatedBytes() {
+    	var threads = ManagementFactory.getThreadMXBean();
+    	if (threads instanceof com.sun.management.ThreadMXBean) {
+    		return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    	}
+    	return 0;
+    }
+
+    private static final class Chunk<Item> {
+
+    	private final Object[] items = new Object[CHUNK_SIZE];
+    	private Chunk<Item> previous;
+    	private Chunk<Item> next;
+    }
+
+    private class ChunkedIterator implements Iterator<Item> {
+
+    	private final int expectedModCount = ChunkedDeque.this.modCount;
+    	private Chunk<Item> chunk = ChunkedDeque.this.head;
+    	private int index = ChunkedDeque.this.first;
+    	private int position;
+
+    	@Override
+    	public boolean hasNext() {
+    		return this.position < ChunkedDeque.this.count;
+    	}
+
+    	@Override
+    	@SuppressWarnings("unchecked")
+    	public Item next() {
+    		if (ChunkedDeque.this.modCount != this.expectedModCount) {
+    			throw new ConcurrentModificationException();
+    		}
+    		if (!this.hasNext()) {
+    			throw new NoSuchElementException();
+    		}
+
+    		if (this.index == CHUNK_SIZE) {
+    			this.chunk = this.chunk.next;
+    			this.index = 0;
+    		}
+    		++this.position;
+    		return (Item) this.chunk.items[this.index++];
+    	}
+
+    	@Override
+    	public void remove() {
+    		throw new UnsupportedOperationException();
+    	}
+    }
+}
@@ -0,0 +1,438 @@
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Bounded, thread-safe randomized queue split into stripes, each an array guarded by its own lock.
+// A thread enqueues into the stripe its id hashes to, so producers on different cores rarely share a lock.
+// A dequeue picks a stripe with probability proportional to its size and then a uniform item in it,
+// which makes every item equally likely (exactly so when no other thread is changing the stripes);
+// if the chosen stripe was emptied in the meantime it steals from the others instead.
+// Two semaphores count the free space and the items, so put and take block only on a full or empty queue.
+public class ConcurrentRandomizedQueue<Item> {
+
+	private static final int MIN_CAPACITY = 8;
+
+	private final Stripe<Item>[] stripes;
+	private final int capacity;
+
+	// permits for free slots and for items that may be removed
+	private final Semaphore space;
+	private final Semaphore items;
+
+    // construct an empty queue holding at most capacity items, with one stripe per processor
+    public ConcurrentRandomizedQueue(int capacity) {
+    	this(capacity, Runtime.getRuntime().availableProcessors());
+    }
+
+    // construct an empty queue holding at most capacity items, split into the given number of stripes
+    @SuppressWarnings("unchecked")
+    public ConcurrentRandomizedQueue(int capacity, int stripes) {
+    	if (capacity <= 0) {
+    		throw new IllegalArgumentException("Capacity must be positive.");
+    	}
+    	if (stripes <= 0) {
+    		throw new IllegalArgumentException("Number of stripes must be positive.");
+    	}
+
+    	this.capacity = capacity;
+    	this.stripes = (Stripe<Item>[]) new Stripe<?>[stripes];
+    	for (var i = 0; i < stripes; i++) {
+    		this.stripes[i] = new Stripe<>();
+    	}
+    	this.space = new Semaphore(capacity);
+    	this.items = new Semaphore(0);
+    }
+
+    // is the queue empty? only a snapshot when other threads are active
+    public boolean isEmpty() {
+    	return this.size() == 0;
+    }
+
+    // return the number of items on the queue; only a snapshot when other threads are active
+    public int size() {
+    	return this.items.availablePermits();
+    }
+
+    // return how many more items fit; only a snapshot when other threads are active
+    public int remainingCapacity() {
+    	return this.space.availablePermits();
+    }
+
+    // return the maximum number of items on the queue
+    public int capacity() {
+    	return this.capacity;
+    }
+
+    // add the item, throwing if the queue is full
+    public void enqueue(Item item) {
+    	if (!this.offer(item)) {
+    		throw new IllegalStateException("Queue is full.");
+    	}
+    }
+
+    // add the item if there is space, returning whether it was added
+    public boolean offer(Item item) {
+    	validate(item);
+    	if (!this.space.tryAcquire()) {
+    		return false;
+    	}
+
+    	this.insert(item);
+    	return true;
+    }
+
+    // add the item, waiting up to the timeout for space, returning whether it was added
+    public boolean offer(Item item, long timeout, TimeUnit unit) throws InterruptedException {
+    	validate(item);
+    	if (!this.space.tryAcquire(timeout, unit)) {
+    		return false;
+    	}
+
+    	this.insert(item);
+    	return true;
+    }
+
+    // add the item, waiting for space as long as it takes
+    public void put(Item item) throws InterruptedException {
+    	validate(item);
+    	this.space.acquire();
+    	this.insert(item);
+    }
+
+    // remove and return a random item, throwing if the queue is empty
+    public Item dequeue() {
+    	Item item = this.poll();
+    	if (item == null) {
+    		throw new NoSuchElementException();
+    	}
+
+    	return item;
+    }
+
+    // remove and return a random item, or null if the queue is empty
+    public Item poll() {
+    	if (!this.items.tryAcquire()) {
+    		return null;
+    	}
+
+    	Item item = this.remove();
+    	this.space.release();
+    	return item;
+    }
+
+    // remove and return a random item, waiting up to the timeout for one, or null if none came
+    public Item poll(long timeout, TimeUnit unit) throws InterruptedException {
+    	if (!this.items.tryAcquire(timeout, unit)) {
+    		return null;
+    	}
+
+    	Item item = this.remove();
+    	this.space.release();
+    	return item;
+    }
+
+    // remove and return a random item, waiting for one as long as it takes
+    public Item take() throws InterruptedException {
+    	this.items.acquire();
+    	Item item = this.remove();
+    	this.space.release();
+    	return item;
+    }
+
+    // return a random item (but do not remove it), throwing if the queue is empty
+    public Item sample() {
+    	ThreadLocalRandom random = ThreadLocalRandom.current();
+    	Stripe<Item> stripe = this.pickStripe(random);
+    	Item item = stripe != null ? stripe.sample(random) : null;
+    	for (var i = 0; item == null && i < this.stripes.length; i++) {
+    		item = this.stripes[i].sample(random);
+    	}
+
+    	if (item == null) {
+    		throw new NoSuchElementException();
+    	}
+    	return item;
+    }
+
+    // remove every item into the collection, in random order, returning how many were moved
+    public int drainTo(Collection<? super Item> collection) {
+    	return this.drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    // remove up to max random items into the collection, in random order, returning how many were moved;
+    // the items are taken with one lock acquisition per stripe
+    @SuppressWarnings("unchecked")
+    public int drainTo(Collection<? super Item> collection, int max) {
+    	if (collection == null) {
+    		throw new IllegalArgumentException("Collection cannot be null");
+    	}
+    	if (max <= 0) {
+    		return 0;
+    	}
+
+    	int count = 0;
+    	while (count < max && this.items.tryAcquire()) {
+    		++count;
+    	}
+    	if (count == 0) {
+    		return 0;
+    	}
+
+    	// how many items to take from each stripe: the multivariate hypergeometric split of their sizes
+    	ThreadLocalRandom random = ThreadLocalRandom.current();
+    	int[] sizes = new int[this.stripes.length];
+    	int total = 0;
+    	for (var i = 0; i < this.stripes.length; i++) {
+    		sizes[i] = this.stripes[i].count;
+    		total += sizes[i];
+    	}
+    	int[] picks = new int[this.stripes.length];
+    	for (var d = 0; d < count && total > 0; d++) {
+    		int target = random.nextInt(total);
+    		int stripe = 0;
+    		while (target >= sizes[stripe]) {
+    			target -= sizes[stripe++];
+    		}
+    		--sizes[stripe];
+    		--total;
+    		++picks[stripe];
+    	}
+
+    	Object[] batch = new Object[count];
+    	int taken = 0;
+    	for (var i = 0; i < this.stripes.length; i++) {
+    		if (picks[i] > 0) {
+    			taken = this.stripes[i].removeRandom(random, picks[i], batch, taken);
+    		}
+    	}
+    	// stripes that shrank since the sizes were read leave the rest to single removals
+    	while (taken < count) {
+    		batch[taken++] = this.remove();
+    	}
+    	this.space.release(count);
+
+    	for (var i = 0; i < count; i++) {
+    		int index = i + random.nextInt(count - i);
+    		Object item = batch[index];
+    		batch[index] = batch[i];
+    		collection.add((Item) item);
+    	}
+    	return count;
+    }
+
+    // put the item in the stripe of the current thread and publish it to consumers
+    private void insert(Item item) {
+    	long id = Thread.currentThread().getId();
+    	int stripe = (int) (((id * 0x9E3779B97F4A7C15L) >>> 33) % this.stripes.length);
+    	this.stripes[stripe].add(item);
+    	this.items.release();
+    }
+
+    // remove a random item; the caller holds an item permit, so one is there to be found,
+    // and releases the slot it frees
+    private Item remove() {
+    	ThreadLocalRandom random = ThreadLocalRandom.current();
+    	while (true) {
+    		Stripe<Item> stripe = this.pickStripe(random);
+    		Item item = stripe != null ? stripe.removeRandom(random) : null;
+    		if (item == null) {
+    			// steal from the other stripes, starting at a random one
+    			int start = random.nextInt(this.stripes.length);
+    			for (var i = 0; item == null && i < this.stripes.length; i++) {
+    				item = this.stripes[(start + i) % this.stripes.length].removeRandom(random);
+    			}
+    		}
+
+    		if (item != null) {
+    			return item;
+    		}
+    		Thread.onSpinWait();
+    	}
+    }
+
+    // a stripe chosen with probability proportional to its size, or null if all of them look empty
+    private Stripe<Item> pickStripe(ThreadLocalRandom random) {
+    	int total = 0;
+    	for (Stripe<Item> stripe : this.stripes) {
+    		total += stripe.count;
+    	}
+    	if (total == 0) {
+    		return null;
+    	}
+
+    	int target = random.nextInt(total);
+    	for (Stripe<Item> stripe : this.stripes) {
+    		int count = stripe.count;
+    		if (target < count) {
+    			return stripe;
+    		}
+    		target -= count;
+    	}
+    	return null;
+    }
+
+    private static void validate(Object item) {
+    	if (item == null) {
+    		throw new IllegalArgumentException("Item cannot be null");
+    	}
+    }
+
+    // producers and consumers stress test, uniformity check, and throughput against a single stripe
+    public static void main(String[] args) throws InterruptedException {
+    	int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+    	int itemsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+
+    	// every item put must be taken exactly once
+    	int total = threads * itemsPerThread;
+    	ConcurrentRandomizedQueue<Integer> queue = new ConcurrentRandomizedQueue<>(1024, threads);
+    	AtomicIntegerArray taken = new AtomicIntegerArray(total);
+    	long stripedTime = run(queue, threads, itemsPerThread, taken);
+    	for (var i = 0; i < total; i++) {
+    		if (taken.get(i) != 1) {
+    			throw new IllegalStateException("Item " + i + " was taken " + taken.get(i) + " times.");
+    		}
+    	}
+    	System.out.println("stress test passed: " + total + " items, " + threads + " producers and consumers");
+
+    	// items spread unevenly over the stripes must still be sampled uniformly
+    	int items = 64;
+    	ConcurrentRandomizedQueue<Integer> uneven = new ConcurrentRandomizedQueue<>(items, 4);
+    	for (var i = 0; i < items; i++) {
+    		uneven.stripes[i < items / 2 ? 0 : 1 + i % 3].add(i);
+    		uneven.items.release();
+    		uneven.space.acquireUninterruptibly();
+    	}
+    	int[] hits = new int[items];
+    	int samples = 1_000_000;
+    	for (var i = 0; i < samples; i++) {
+    		++hits[uneven.sample()];
+    	}
+    	double chiSquare = 0;
+    	double expected = (double) samples / items;
+    	for (int hit : hits) {
+    		chiSquare += (hit - expected) * (hit - expected) / expected;
+    	}
+    	System.out.printf("sample chi-square over %d items: %.1f (%d degrees of freedom)%n", items, chiSquare, items - 1);
+
+    	ConcurrentRandomizedQueue<Integer> single = new ConcurrentRandomizedQueue<>(1024, 1);
+    	long singleTime = run(single, threads, itemsPerThread, new AtomicIntegerArray(total));
+    	System.out.printf("%d stripes: %.1f M items/s, 1 stripe: %.1f M items/s%n",
+    			threads, total / (stripedTime / 1e3), total / (singleTime / 1e3));
+    }
+
+    // runs producers putting disjoint ranges of items against consumers taking them, returning the nanoseconds spent
+    private static long run(ConcurrentRandomizedQueue<Integer> queue, int threads, int itemsPerThread,
+    		AtomicIntegerArray taken) throws InterruptedException {
+    	Thread[] workers = new Thread[2 * threads];
+    	for (var t = 0; t < threads; t++) {
+    		int first = t * itemsPerThread;
+    		workers[t] = new Thread(() -> {
+    			try {
+    				for (var i = 0; i < itemsPerThread; i++) {
+    					queue.put(first + i);
+    				}
+    			} catch (InterruptedException e) {
+    				Thread.currentThread().interrupt();
+    			}
+    		});
+    		workers[threads + t] = new Thread(() -> {
+    			try {
+    				for (var i = 0; i < itemsPerThread; i++) {
+    					taken.getAndIncrement(queue.take());
+    				}
+    			} catch (InterruptedException e) {
+    				Thread.currentThread().interrupt();
+    			}
+    		});
+    	}
+
+    	long start = System.nanoTime();
+    	for (Thread worker : workers) {
+    		worker.start();
+    	}
+    	for (Thread worker : workers) {
+    		worker.join();
+    	}
+    	return System.nanoTime() - start;
+    }
+
+    // one shard of the queue: items live in items[0..count), in no particular order
+    private static final class Stripe<Item> {
+
+    	private final ReentrantLock lock = new ReentrantLock();
+    	private Object[] items = new Object[MIN_CAPACITY];
+
+    	// written under the lock, read without it to weigh the stripes
+    	private volatile int count;
+
+    	void add(Item item) {
+    		this.lock.lock();
+    		try {
+    			if (this.count == this.items.length) {
+    				this.resize(2 * this.items.length);
+    			}
+    			this.items[this.count] = item;
+    			this.count = this.count + 1;
+    		} finally {
+    			this.lock.unlock();
+    		}
+    	}
+
+    	@SuppressWarnings("unchecked")
+    	Item sample(ThreadLocalRandom random) {
+    		this.lock.lock();
+    		try {
+    			return this.count == 0 ? null : (Item) this.items[random.nextInt(this.count)];
+    		} finally {
+    			this.lock.unlock();
+    		}
+    	}
+
+    	// removes a uniform item, or returns null if the stripe is empty
+    	Item removeRandom(ThreadLocalRandom random) {
+    		this.lock.lock();
+    		try {
+    			return this.count == 0 ? null : this.removeAt(random.nextInt(this.count));
+    		} finally {
+    			this.lock.unlock();
+    		}
+    	}
+
+    	// removes up to n uniform items into batch[from..], returning the position after the last one
+    	int removeRandom(ThreadLocalRandom random, int n, Object[] batch, int from) {
+    		this.lock.lock();
+    		try {
+    			for (var i = 0; i < n && this.count > 0; i++) {
+    				batch[from++] = this.removeAt(random.nextInt(this.count));
+    			}
+    			return from;
+    		} finally {
+    			this.lock.unlock();
+    		}
+    	}
+
+    	// move the last item into the hole, halving the array when it is a quarter full
+    	@SuppressWarnings("unchecked")
+    	private Item removeAt(int index) {
+    		int last = this.count - 1;
+    		Item item = (Item) this.items[index];
+    		this.items[index] = this.items[last];
+    		this.items[last] = null;
+    		this.count = last;
+    		if (this.items.length > MIN_CAPACITY && last <= this.items.length / 4) {
+    			this.resize(this.items.length / 2);
+    		}
+    		return item;
+    	}
+
+    	private void resize(int capacity) {
+    		Object[] resized = new Object[capacity];
+    		System.arraycopy(this.items, 0, resized, 0, this.count);
+    		this.items = resized;
+    	}
+    }
+}
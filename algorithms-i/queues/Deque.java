@@ -1,5 +1,12 @@
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.StreamSupport;
 
 public class Deque<Item> implements Iterable<Item> {
 
@@ -99,10 +106,145 @@ public class Deque<Item> implements Iterable<Item> {
     	return item;
     }
 
+    // add the items to the front, keeping their order, so the first of them becomes the first item
+    public void addAllFirst(Collection<? extends Item> items) {
+    	this.splice(toArray(items), true);
+    }
+
+    // add the items to the front, keeping their order, so the first of them becomes the first item
+    public void addAllFirst(Item[] items) {
+    	this.splice(validate(items), true);
+    }
+
+    // add the items to the back, keeping their order, so the last of them becomes the last item
+    public void addAllLast(Collection<? extends Item> items) {
+    	this.splice(toArray(items), false);
+    }
+
+    // add the items to the back, keeping their order, so the last of them becomes the last item
+    public void addAllLast(Item[] items) {
+    	this.splice(validate(items), false);
+    }
+
+    // remove items from the front into the array, as many as fit, and return how many were moved
+    public int drainTo(Item[] array) {
+    	if (array == null) {
+    		throw new IllegalArgumentException("Array cannot be null");
+    	}
+
+    	int moved = Math.min(this.count, array.length);
+    	LinkedListNode<Item> node = this.head;
+    	for (var i = 0; i < moved; i++) {
+    		array[i] = node.GetData();
+    		node = node.GetNext();
+    	}
+
+    	// unlink the drained nodes in one cut
+    	this.head = node;
+    	if (this.head != null) {
+    		this.head.SetPrevious(null);
+    	}
+    	this.count -= moved;
+    	if (this.count <= 1) {
+    		this.tail = this.head;
+    	}
+
+    	return moved;
+    }
+
+    // return an array of the items in order from front to back
+    public Object[] toArray() {
+    	Object[] array = new Object[this.count];
+    	this.copyInto(array);
+    	return array;
+    }
+
+    // return the items in order from front to back, in the given array if they fit or else in a new one of its type
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] array) {
+    	if (array.length < this.count) {
+    		array = (T[]) Arrays.copyOf(array, this.count, array.getClass());
+    	} else if (array.length > this.count) {
+    		array[this.count] = null;
+    	}
+
+    	this.copyInto(array);
+    	return array;
+    }
+
     // return an iterator over items in order from front to back
     public Iterator<Item> iterator() {
     	return new LinkedListNodeIterator<>(this.head);
     }
+
+    // return a sized spliterator over items in order from front to back, which splits off growing blocks
+    // of items copied into arrays, so parallel streams can hand them to other threads
+    @Override
+    public Spliterator<Item> spliterator() {
+    	return new LinkedListNodeSpliterator<>(this.head, this.count);
+    }
+
+    // link the items into a chain off to the side, then attach the whole chain at once
+    @SuppressWarnings("unchecked")
+    private void splice(Object[] items, boolean atFront) {
+    	if (items.length == 0) {
+    		return;
+    	}
+
+    	LinkedListNode<Item> first = new LinkedListNode<>((Item) items[0]);
+    	LinkedListNode<Item> last = first;
+    	for (var i = 1; i < items.length; i++) {
+    		LinkedListNode<Item> node = new LinkedListNode<>((Item) items[i]);
+    		node.SetPrevious(last);
+    		last.SetNext(node);
+    		last = node;
+    	}
+
+    	if (this.count == 0) {
+    		this.head = first;
+    		this.tail = last;
+    	} else if (atFront) {
+    		last.SetNext(this.head);
+    		this.head.SetPrevious(last);
+    		this.head = first;
+    	} else {
+    		first.SetPrevious(this.tail);
+    		this.tail.SetNext(first);
+    		this.tail = last;
+    	}
+
+    	this.count += items.length;
+    }
+
+    private void copyInto(Object[] array) {
+    	LinkedListNode<Item> node = this.head;
+    	for (var i = 0; i < this.count; i++) {
+    		array[i] = node.GetData();
+    		node = node.GetNext();
+    	}
+    }
+
+    // the items of the collection, checked before any of them is added
+    private static Object[] toArray(Collection<?> items) {
+    	if (items == null) {
+    		throw new IllegalArgumentException("Collection cannot be null");
+    	}
+
+    	return validate(items.toArray());
+    }
+
+    private static Object[] validate(Object[] items) {
+    	if (items == null) {
+    		throw new IllegalArgumentException("Array cannot be null");
+    	}
+    	for (Object item : items) {
+    		if (item == null) {
+    			throw new IllegalArgumentException("Item cannot be null");
+    		}
+    	}
+
+    	return items;
+    }
     
     // unit testing (required)
     public static void main(String[] args) {
@@ -118,6 +260,32 @@ public class Deque<Item> implements Iterable<Item> {
     	for (int value : queue) {
     		System.out.println(value);
     	}
+
+    	queue.addAllFirst(new Integer[] { 7, 8 });
+    	queue.addAllLast(List.of(9, 10));
+    	System.out.println(Arrays.toString(queue.toArray()));
+    	Integer[] drained = new Integer[3];
+    	System.out.println(queue.drainTo(drained) + " drained: " + Arrays.toString(drained)
+    			+ ", left: " + Arrays.toString(queue.toArray(new Integer[0])));
+
+    	// a reduction with some work per item, sequential against parallel
+    	int items = args.length > 0 ? Integer.parseInt(args[0]) : 4_000_000;
+    	Integer[] block = new Integer[items];
+    	for (var i = 0; i < items; i++) {
+    		block[i] = i;
+    	}
+    	var large = new Deque<Integer>();
+    	large.addAllLast(block);
+    	for (var round = 0; round < 3; round++) {
+    		long start = System.nanoTime();
+    		double sequential = StreamSupport.stream(large.spliterator(), false).mapToDouble(Math::sqrt).map(Math::log1p).sum();
+    		long sequentialTime = System.nanoTime() - start;
+    		start = System.nanoTime();
+    		double parallel = StreamSupport.stream(large.spliterator(), true).mapToDouble(Math::sqrt).map(Math::log1p).sum();
+    		long parallelTime = System.nanoTime() - start;
+    		System.out.printf("sum %.6e sequential in %d ms, %.6e parallel in %d ms%n",
+    				sequential, sequentialTime / 1_000_000, parallel, parallelTime / 1_000_000);
+    	}
     }
 
 }
@@ -182,4 +350,79 @@ class LinkedListNodeIterator<Item> implements Iterator<Item> {
 		throw new UnsupportedOperationException();
 	}
 	
-}
\ No newline at end of file
+}
+
+// walks the nodes from a head, splitting off blocks one batch larger each time, as arrays that split evenly
+class LinkedListNodeSpliterator<Item> implements Spliterator<Item> {
+
+	private static final int BATCH_UNIT = 1 << 10;
+	private static final int MAX_BATCH = 1 << 25;
+
+	private LinkedListNode<Item> current;
+	private int remaining;
+	private int batch;
+
+	public LinkedListNodeSpliterator(LinkedListNode<Item> head, int count) {
+		this.current = head;
+		this.remaining = count;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super Item> action) {
+		if (action == null) {
+			throw new NullPointerException();
+		}
+		if (this.remaining == 0) {
+			return false;
+		}
+
+		Item item = this.current.GetData();
+		this.current = this.current.GetNext();
+		--this.remaining;
+		action.accept(item);
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super Item> action) {
+		if (action == null) {
+			throw new NullPointerException();
+		}
+
+		LinkedListNode<Item> node = this.current;
+		int count = this.remaining;
+		this.current = null;
+		this.remaining = 0;
+		for (var i = 0; i < count; i++) {
+			action.accept(node.GetData());
+			node = node.GetNext();
+		}
+	}
+
+	@Override
+	public Spliterator<Item> trySplit() {
+		if (this.remaining <= 1) {
+			return null;
+		}
+
+		int size = Math.min(Math.min(this.batch + BATCH_UNIT, MAX_BATCH), this.remaining);
+		Object[] block = new Object[size];
+		for (var i = 0; i < size; i++) {
+			block[i] = this.current.GetData();
+			this.current = this.current.GetNext();
+		}
+		this.batch = size;
+		this.remaining -= size;
+		return Spliterators.spliterator(block, 0, size, Spliterator.ORDERED | Spliterator.NONNULL);
+	}
+
+	@Override
+	public long estimateSize() {
+		return this.remaining;
+	}
+
+	@Override
+	public int characteristics() {
+		return Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.SIZED | Spliterator.SUBSIZED;
+	}
+}
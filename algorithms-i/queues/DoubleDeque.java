@@ -0,0 +1,162 @@
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
+
+// Deque of double values, backed by a circular double[] so no value is ever boxed
+public class DoubleDeque implements Iterable<Double> {
+
+	private static final int MIN_CAPACITY = 8;
+
+	// items live in items[head], items[head + 1], ... wrapping around; the length is a power of two
+	private double[] items;
+	private int head;
+	private int count;
+
+	// number of structural changes, checked by iterators
+	private int modCount;
+
+    // construct an empty deque
+    public DoubleDeque() {
+    	this.items = new double[MIN_CAPACITY];
+    }
+
+    // is the deque empty?
+    public boolean isEmpty() {
+    	return this.count == 0;
+    }
+
+    // return the number of items on the deque
+    public int size() {
+    	return this.count;
+    }
+
+    // add the item to the front
+    public void addFirst(double item) {
+    	if (this.count == this.items.length) {
+    		this.resize(2 * this.items.length);
+    	}
+
+    	this.head = (this.head - 1) & (this.items.length - 1);
+    	this.items[this.head] = item;
+    	++this.count;
+    	++this.modCount;
+    }
+
+    // add the item to the back
+    public void addLast(double item) {
+    	if (this.count == this.items.length) {
+    		this.resize(2 * this.items.length);
+    	}
+
+    	this.items[(this.head + this.count) & (this.items.length - 1)] = item;
+    	++this.count;
+    	++this.modCount;
+    }
+
+    // remove and return the item from the front
+    public double removeFirst() {
+    	if (this.count == 0) {
+    		throw new NoSuchElementException();
+    	}
+
+    	double item = this.items[this.head];
+    	this.head = (this.head + 1) & (this.items.length - 1);
+    	--this.count;
+    	++this.modCount;
+    	this.shrinkIfSparse();
+    	return item;
+    }
+
+    // remove and return the item from the back
+    public double removeLast() {
+    	if (this.count == 0) {
+    		throw new NoSuchElementException();
+    	}
+
+    	double item = this.items[(this.head + this.count - 1) & (this.items.length - 1)];
+    	--this.count;
+    	++this.modCount;
+    	this.shrinkIfSparse();
+    	return item;
+    }
+
+    // return an iterator over items in order from front to back
+    @Override
+    public PrimitiveIterator.OfDouble iterator() {
+    	return new DoubleDequeIterator();
+    }
+
+    // return a sequential stream over items in order from front to back
+    public DoubleStream stream() {
+    	return StreamSupport.doubleStream(Spliterators.spliterator(this.iterator(), this.count,
+    			Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    // halve the array when it is a quarter full, so it stays between 25% and 100% full
+    private void shrinkIfSparse() {
+    	if (this.items.length > MIN_CAPACITY && this.count <= this.items.length / 4) {
+    		this.resize(this.items.length / 2);
+    	}
+    }
+
+    // copy the items, unwrapped, to the front of a new array
+    private void resize(int capacity) {
+    	double[] resized = new double[capacity];
+    	int firstPart = Math.min(this.count, this.items.length - this.head);
+    	System.arraycopy(this.items, this.head, resized, 0, firstPart);
+    	System.arraycopy(this.items, 0, resized, firstPart, this.count - firstPart);
+    	this.items = resized;
+    	this.head = 0;
+    }
+
+    // unit testing
+    public static void main(String[] args) {
+    	var queue = new DoubleDeque();
+    	queue.addFirst(1);
+    	queue.addFirst(2);
+    	queue.addFirst(3);
+    	queue.addLast(4);
+    	queue.addLast(5);
+    	queue.addLast(6);
+    	queue.removeFirst();
+    	queue.removeLast();
+    	PrimitiveIterator.OfDouble iterator = queue.iterator();
+    	while (iterator.hasNext()) {
+    		System.out.println(iterator.nextDouble());
+    	}
+    	System.out.println(queue.stream().sum());
+    }
+
+    private class DoubleDequeIterator implements PrimitiveIterator.OfDouble {
+
+    	private final int expectedModCount = DoubleDeque.this.modCount;
+    	private int position;
+
+    	@Override
+    	public boolean hasNext() {
+    		return this.position < DoubleDeque.this.count;
+    	}
+
+    	@Override
+    	public double nextDouble() {
+    		if (DoubleDeque.this.modCount != this.expectedModCount) {
+    			throw new ConcurrentModificationException();
+    		}
+    		if (!this.hasNext()) {
+    			throw new NoSuchElementException();
+    		}
+
+    		double[] items = DoubleDeque.this.items;
+    		return items[(DoubleDeque.this.head + this.position++) & (items.length - 1)];
+    	}
+
+    	@Override
+    	public void remove() {
+    		throw new UnsupportedOperationException();
+    	}
+    }
+}
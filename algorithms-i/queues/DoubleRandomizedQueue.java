@@ -0,0 +1,133 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
+
+import edu.princeton.cs.algs4.StdRandom;
+
+// RandomizedQueue of double values, backed by a resizable double[] so no value is ever boxed
+public class DoubleRandomizedQueue implements Iterable<Double> {
+
+	private static final int MIN_CAPACITY = 8;
+
+	// items live in items[0..count), in no particular order
+	private double[] items;
+	private int count;
+
+    // construct an empty randomized queue
+    public DoubleRandomizedQueue() {
+    	this.items = new double[MIN_CAPACITY];
+    }
+
+    // is the randomized queue empty?
+    public boolean isEmpty() {
+    	return this.count == 0;
+    }
+
+    // return the number of items on the randomized queue
+    public int size() {
+    	return this.count;
+    }
+
+    // add the item
+    public void enqueue(double item) {
+    	if (this.count == this.items.length) {
+    		this.items = Arrays.copyOf(this.items, 2 * this.items.length);
+    	}
+
+    	this.items[this.count++] = item;
+    }
+
+    // remove and return a random item
+    public double dequeue() {
+    	if (this.isEmpty()) {
+    		throw new NoSuchElementException();
+    	}
+
+    	// move the last item into the hole left by the random one
+    	int index = StdRandom.uniform(this.count);
+    	double item = this.items[index];
+    	this.items[index] = this.items[--this.count];
+
+    	if (this.items.length > MIN_CAPACITY && this.count <= this.items.length / 4) {
+    		this.items = Arrays.copyOf(this.items, this.items.length / 2);
+    	}
+
+    	return item;
+    }
+
+    // return a random item (but do not remove it)
+    public double sample() {
+    	if (this.isEmpty()) {
+    		throw new NoSuchElementException();
+    	}
+
+    	return this.items[StdRandom.uniform(this.count)];
+    }
+
+    // return an independent iterator over items in random order
+    @Override
+    public PrimitiveIterator.OfDouble iterator() {
+    	return new DoubleRandomizedQueueIterator(Arrays.copyOf(this.items, this.count));
+    }
+
+    // return a sequential stream over items in random order
+    public DoubleStream stream() {
+    	return StreamSupport.doubleStream(Spliterators.spliterator(this.iterator(), this.count, Spliterator.NONNULL), false);
+    }
+
+    // unit testing
+    public static void main(String[] args) {
+    	DoubleRandomizedQueue queue = new DoubleRandomizedQueue();
+    	for (var i = 0; i < 10; i++) {
+    		queue.enqueue(i);
+    	}
+
+    	for (var i = 0; i < 10; i++) {
+    		System.out.println(queue.sample());
+    	}
+
+    	PrimitiveIterator.OfDouble iterator = queue.iterator();
+    	while (iterator.hasNext()) {
+    		System.out.println(iterator.nextDouble());
+    	}
+    	System.out.println(queue.stream().sum());
+    }
+
+    // shuffles its copy of the items lazily, one Fisher-Yates step per call
+    private static class DoubleRandomizedQueueIterator implements PrimitiveIterator.OfDouble {
+
+    	private final double[] items;
+    	private int current;
+
+    	DoubleRandomizedQueueIterator(double[] items) {
+    		this.items = items;
+    	}
+
+    	@Override
+    	public boolean hasNext() {
+    		return this.current < this.items.length;
+    	}
+
+    	@Override
+    	public double nextDouble() {
+    		if (!this.hasNext()) {
+    			throw new NoSuchElementException();
+    		}
+
+    		int index = this.current + StdRandom.uniform(this.items.length - this.current);
+    		double item = this.items[index];
+    		this.items[index] = this.items[this.current];
+    		this.items[this.current++] = item;
+    		return item;
+    	}
+
+    	@Override
+    	public void remove() {
+    		throw new UnsupportedOperationException();
+    	}
+    }
+}
@@ -0,0 +1,133 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import edu.princeton.cs.algs4.StdRandom;
+
+// RandomizedQueue of int values, backed by a resizable int[] so no value is ever boxed
+public class IntRandomizedQueue implements Iterable<Integer> {
+
+	private static final int MIN_CAPACITY = 8;
+
+	// items live in items[0..count), in no particular order
+	private int[] items;
+	private int count;
+
+    // construct an empty randomized queue
+    public IntRandomizedQueue() {
+    	this.items = new int[MIN_CAPACITY];
+    }
+
+    // is the randomized queue empty?
+    public boolean isEmpty() {
+    	return this.count == 0;
+    }
+
+    // return the number of items on the randomized queue
+    public int size() {
+    	return this.count;
+    }
+
+    // add the item
+    public void enqueue(int item) {
+    	if (this.count == this.items.length) {
+    		this.items = Arrays.copyOf(this.items, 2 * this.items.length);
+    	}
+
+    	this.items[this.count++] = item;
+    }
+
+    // remove and return a random item
+    public int dequeue() {
+    	if (this.isEmpty()) {
+    		throw new NoSuchElementException();
+    	}
+
+    	// move the last item into the hole left by the random one
+    	int index = StdRandom.uniform(this.count);
+    	int item = this.items[index];
+    	this.items[index] = this.items[--this.count];
+
+    	if (this.items.length > MIN_CAPACITY && this.count <= this.items.length / 4) {
+    		this.items = Arrays.copyOf(this.items, this.items.length / 2);
+    	}
+
+    	return item;
+    }
+
+    // return a random item (but do not remove it)
+    public int sample() {
+    	if (this.isEmpty()) {
+    		throw new NoSuchElementException();
+    	}
+
+    	return this.items[StdRandom.uniform(this.count)];
+    }
+
+    // return an independent iterator over items in random order
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+    	return new IntRandomizedQueueIterator(Arrays.copyOf(this.items, this.count));
+    }
+
+    // return a sequential stream over items in random order
+    public IntStream stream() {
+    	return StreamSupport.intStream(Spliterators.spliterator(this.iterator(), this.count, Spliterator.NONNULL), false);
+    }
+
+    // unit testing
+    public static void main(String[] args) {
+    	IntRandomizedQueue queue = new IntRandomizedQueue();
+    	for (var i = 0; i < 10; i++) {
+    		queue.enqueue(i);
+    	}
+
+    	for (var i = 0; i < 10; i++) {
+    		System.out.println(queue.sample());
+    	}
+
+    	PrimitiveIterator.OfInt iterator = queue.iterator();
+    	while (iterator.hasNext()) {
+    		System.out.println(iterator.nextInt());
+    	}
+    	System.out.println(queue.stream().sum());
+    }
+
+    // shuffles its copy of the items lazily, one Fisher-Yates step per call
+    private static class IntRandomizedQueueIterator implements PrimitiveIterator.OfInt {
+
+    	private final int[] items;
+    	private int current;
+
+    	IntRandomizedQueueIterator(int[] items) {
+    		this.items = items;
+    	}
+
+    	@Override
+    	public boolean hasNext() {
+    		return this.current < this.items.length;
+    	}
+
+    	@Override
+    	public int nextInt() {
+    		if (!this.hasNext()) {
+    			throw new NoSuchElementException();
+    		}
+
+    		int index = this.current + StdRandom.uniform(this.items.length - this.current);
+    		int item = this.items[index];
+    		this.items[index] = this.items[this.current];
+    		this.items[this.current++] = item;
+    		return item;
+    	}
+
+    	@Override
+    	public void remove() {
+    		throw new UnsupportedOperationException();
+    	}
+    }
+}
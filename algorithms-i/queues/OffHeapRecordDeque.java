@@ -0,0 +1,412 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+// Deque of fixed-width records kept outside the Java heap, unrolled into chunks like ChunkedDeque.
+// Chunks are direct buffers up to a memory limit; past it they are regions of a memory-mapped spill file,
+// so the operating system pages them out instead of the deque running out of memory.
+// Emptied chunks are reused from free-lists: direct ones up to a few spares, mapped ones always,
+// so file regions are recycled rather than the file growing without bound.
+public class OffHeapRecordDeque implements Closeable {
+
+	private static final int DEFAULT_CHUNK_BYTES = 1 << 20;
+
+	// spare direct chunks kept for reuse; beyond this they are left to the garbage collector to free
+	private static final int MAX_SPARE_CHUNKS = 16;
+
+	private final int recordSize;
+	private final int recordsPerChunk;
+	private final int chunkBytes;
+
+	// bytes of direct memory allowed before chunks spill to the file, which is null when there is none
+	private final long memoryLimit;
+	private final Path spillFile;
+	private FileChannel channel;
+	private long fileLength;
+	private long directBytes;
+
+	// records live in head[first..], the chunks in between, and tail[..last)
+	private Chunk head;
+	private Chunk tail;
+	private int first;
+	private int last;
+	private long count;
+
+	// free-lists of empty chunks, linked through next
+	private Chunk spareDirect;
+	private int spareDirectCount;
+	private Chunk spareMapped;
+
+	// construct an empty deque of records of the given number of bytes, all held in direct memory
+	public OffHeapRecordDeque(int recordSize) {
+		this(recordSize, Long.MAX_VALUE, null);
+	}
+
+	// construct an empty deque of records of the given number of bytes, holding up to memoryLimit bytes
+	// in direct memory and the rest in the spill file, which is created when first needed and deleted on close
+	public OffHeapRecordDeque(int recordSize, long memoryLimit, Path spillFile) {
+		if (recordSize <= 0 || recordSize > DEFAULT_CHUNK_BYTES) {
+			throw new IllegalArgumentException("Record size must be between 1 and " + DEFAULT_CHUNK_BYTES + ".");
+		}
+		if (memoryLimit < 0) {
+			throw new IllegalArgumentException("Memory limit cannot be negative.");
+		}
+		if (memoryLimit < Long.MAX_VALUE && spillFile == null) {
+			throw new IllegalArgumentException("A memory limit needs a spill file.");
+		}
+
+		this.recordSize = recordSize;
+		this.recordsPerChunk = DEFAULT_CHUNK_BYTES / recordSize;
+		this.chunkBytes = this.recordsPerChunk * recordSize;
+		this.memoryLimit = memoryLimit;
+		this.spillFile = spillFile;
+		this.head = this.tail = this.takeSpare();
+		this.first = this.last = this.recordsPerChunk / 2;
+	}
+
+	// is the deque empty?
+	public boolean isEmpty() {
+		return this.count == 0;
+	}
+
+	// return the number of records on the deque
+	public long size() {
+		return this.count;
+	}
+
+	// return the number of bytes in each record
+	public int recordSize() {
+		return this.recordSize;
+	}
+
+	// add the record to the front
+	public void addFirst(byte[] record) {
+		this.validate(record);
+		int offset = this.reserveFirst();
+		this.head.buffer.put(offset, record);
+	}
+
+	// add the record to the back
+	public void addLast(byte[] record) {
+		this.validate(record);
+		int offset = this.reserveLast();
+		this.tail.buffer.put(offset, record);
+	}
+
+	// add the value as an 8-byte record to the front
+	public void addFirst(long value) {
+		this.validateLong();
+		int offset = this.reserveFirst();
+		this.head.buffer.putLong(offset, value);
+	}
+
+	// add the value as an 8-byte record to the back
+	public void addLast(long value) {
+		this.validateLong();
+		int offset = this.reserveLast();
+		this.tail.buffer.putLong(offset, value);
+	}
+
+	// copy the record at the front into the array (but do not remove it)
+	public void peekFirst(byte[] record) {
+		this.validate(record);
+		this.ensureNotEmpty();
+		this.head.buffer.get(this.first * this.recordSize, record);
+	}
+
+	// copy the record at the back into the array (but do not remove it)
+	public void peekLast(byte[] record) {
+		this.validate(record);
+		this.ensureNotEmpty();
+		this.tail.buffer.get((this.last - 1) * this.recordSize, record);
+	}
+
+	// remove the record from the front, copying it into the array
+	public void removeFirst(byte[] record) {
+		this.peekFirst(record);
+		this.releaseFirst();
+	}
+
+	// remove the record from the back, copying it into the array
+	public void removeLast(byte[] record) {
+		this.peekLast(record);
+		this.releaseLast();
+	}
+
+	// remove and return the 8-byte record from the front
+	public long removeFirstLong() {
+		this.validateLong();
+		this.ensureNotEmpty();
+		long value = this.head.buffer.getLong(this.first * this.recordSize);
+		this.releaseFirst();
+		return value;
+	}
+
+	// remove and return the 8-byte record from the back
+	public long removeLastLong() {
+		this.validateLong();
+		this.ensureNotEmpty();
+		long value = this.tail.buffer.getLong((this.last - 1) * this.recordSize);
+		this.releaseLast();
+		return value;
+	}
+
+	// drop every chunk and delete the spill file; direct memory is returned once the buffers are collected
+	@Override
+	public void close() {
+		this.head = this.tail = null;
+		this.spareDirect = this.spareMapped = null;
+		this.count = 0;
+		try {
+			if (this.channel != null) {
+				this.channel.close();
+				this.channel = null;
+			}
+			if (this.spillFile != null) {
+				Files.deleteIfExists(this.spillFile);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// byte offset of a new first record, in what is the head chunk once this returns
+	private int reserveFirst() {
+		if (this.first == 0) {
+			Chunk chunk = this.takeSpare();
+			chunk.next = this.head;
+			this.head.previous = chunk;
+			this.head = chunk;
+			this.first = this.recordsPerChunk;
+		}
+
+		++this.count;
+		return --this.first * this.recordSize;
+	}
+
+	// byte offset of a new last record, in what is the tail chunk once this returns
+	private int reserveLast() {
+		if (this.last == this.recordsPerChunk) {
+			Chunk chunk = this.takeSpare();
+			chunk.previous = this.tail;
+			this.tail.next = chunk;
+			this.tail = chunk;
+			this.last = 0;
+		}
+
+		++this.count;
+		return this.last++ * this.recordSize;
+	}
+
+	private void releaseFirst() {
+		++this.first;
+		--this.count;
+		if (this.count == 0) {
+			this.reset();
+		} else if (this.first == this.recordsPerChunk) {
+			Chunk emptied = this.head;
+			this.head = emptied.next;
+			this.head.previous = null;
+			this.first = 0;
+			this.putSpare(emptied);
+		}
+	}
+
+	private void releaseLast() {
+		--this.last;
+		--this.count;
+		if (this.count == 0) {
+			this.reset();
+		} else if (this.last == 0) {
+			Chunk emptied = this.tail;
+			this.tail = emptied.previous;
+			this.tail.next = null;
+			this.last = this.recordsPerChunk;
+			this.putSpare(emptied);
+		}
+	}
+
+	// an empty deque keeps one chunk with both ends in the middle, so either end can grow
+	private void reset() {
+		while (this.head != this.tail) {
+			Chunk emptied = this.head;
+			this.head = emptied.next;
+			this.putSpare(emptied);
+		}
+		this.head.previous = null;
+		this.first = this.last = this.recordsPerChunk / 2;
+	}
+
+	// a spare direct chunk, a new one while under the memory limit, a spare mapped one, or a new mapped one
+	private Chunk takeSpare() {
+		Chunk chunk;
+		if (this.spareDirect != null) {
+			chunk = this.spareDirect;
+			this.spareDirect = chunk.next;
+			--this.spareDirectCount;
+		} else if (this.directBytes <= this.memoryLimit - this.chunkBytes) {
+			chunk = new Chunk(ByteBuffer.allocateDirect(this.chunkBytes), false);
+			this.directBytes += this.chunkBytes;
+		} else if (this.spareMapped != null) {
+			chunk = this.spareMapped;
+			this.spareMapped = chunk.next;
+		} else {
+			chunk = new Chunk(this.mapRegion(), true);
+		}
+
+		chunk.next = null;
+		return chunk;
+	}
+
+	private void putSpare(Chunk chunk) {
+		chunk.previous = null;
+		if (chunk.mapped) {
+			chunk.next = this.spareMapped;
+			this.spareMapped = chunk;
+		} else if (this.spareDirectCount < MAX_SPARE_CHUNKS) {
+			chunk.next = this.spareDirect;
+			this.spareDirect = chunk;
+			++this.spareDirectCount;
+		} else {
+			chunk.next = null;
+			this.directBytes -= this.chunkBytes;
+		}
+	}
+
+	// maps a new chunk-sized region at the end of the spill file
+	private ByteBuffer mapRegion() {
+		try {
+			if (this.channel == null) {
+				this.channel = FileChannel.open(this.spillFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+						StandardOpenOption.READ, StandardOpenOption.WRITE);
+			}
+
+			ByteBuffer region = this.channel.map(FileChannel.MapMode.READ_WRITE, this.fileLength, this.chunkBytes);
+			this.fileLength += this.chunkBytes;
+			return region;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void validate(byte[] record) {
+		if (record == null) {
+			throw new IllegalArgumentException("Record cannot be null");
+		}
+		if (record.length != this.recordSize) {
+			throw new IllegalArgumentException("Record must be " + this.recordSize + " bytes long.");
+		}
+		if (this.head == null) {
+			throw new IllegalStateException("Deque is closed.");
+		}
+	}
+
+	private void validateLong() {
+		if (this.recordSize != Long.BYTES) {
+			throw new IllegalStateException("Records are " + this.recordSize + " bytes long, not " + Long.BYTES + ".");
+		}
+		if (this.head == null) {
+			throw new IllegalStateException("Deque is closed.");
+		}
+	}
+
+	private void ensureNotEmpty() {
+		if (this.count == 0) {
+			throw new NoSuchElementException();
+		}
+	}
+
+	// unit testing across the spill boundary, plus heap allocation against LongDeque
+	public static void main(String[] args) throws IOException {
+		long records = args.length > 0 ? Long.parseLong(args[0]) : 20_000_000;
+		long memoryLimit = args.length > 1 ? Long.parseLong(args[1]) : 64L << 20;
+		Path spillFile = Files.createTempFile("deque", ".spill");
+
+		try (OffHeapRecordDeque deque = new OffHeapRecordDeque(Long.BYTES, memoryLimit, spillFile)) {
+			long allocated = allocatedBytes();
+			long start = System.nanoTime();
+			for (long i = 0; i < records; i++) {
+				if ((i & 1) == 0) {
+					deque.addLast(i);
+				} else {
+					deque.addFirst(i);
+				}
+			}
+
+			// the odd values come off the front in descending order, then the even ones off the back likewise
+			for (long expected = records % 2 == 0 ? records - 1 : records - 2; expected >= 1; expected -= 2) {
+				check(expected, deque.removeFirstLong());
+			}
+			for (long expected = records % 2 == 0 ? records - 2 : records - 1; expected >= 0; expected -= 2) {
+				check(expected, deque.removeLastLong());
+			}
+			if (!deque.isEmpty()) {
+				throw new IllegalStateException("Deque should be empty.");
+			}
+			long time = System.nanoTime() - start;
+			System.out.printf("OffHeapRecordDeque: %d records in %d ms, %,d bytes of memory still held, %,d of file, %,d heap bytes allocated%n",
+					records, time / 1_000_000, deque.directBytes, deque.fileLength, allocatedBytes() - allocated);
+		}
+
+		try (OffHeapRecordDeque deque = new OffHeapRecordDeque(3)) {
+			deque.addLast(new byte[] { 1, 2, 3 });
+			deque.addFirst(new byte[] { 4, 5, 6 });
+			byte[] record = new byte[3];
+			deque.removeLast(record);
+			System.out.println(java.util.Arrays.toString(record) + ", " + deque.size() + " left");
+		}
+
+		heapComparison(records);
+	}
+
+	private static void check(long expected, long value) {
+		if (value != expected) {
+			throw new IllegalStateException("Expected " + expected + " but got " + value + ".");
+		}
+	}
+
+	// the same fill and drain on the heap
+	private static void heapComparison(long records) {
+		long allocated = allocatedBytes();
+		long start = System.nanoTime();
+		LongDeque deque = new LongDeque();
+		for (long i = 0; i < records; i++) {
+			deque.addLast(i);
+		}
+		while (!deque.isEmpty()) {
+			deque.removeFirst();
+		}
+		long time = System.nanoTime() - start;
+		System.out.printf("LongDeque: %d records in %d ms, %,d heap bytes allocated%n",
+				records, time / 1_000_000, allocatedBytes() - allocated);
+	}
+
+	// bytes allocated by the current thread so far, or 0 where the JVM does not report it
+	private static long allocatedBytes() {
+		var threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	private static final class Chunk {
+
+		private final ByteBuffer buffer;
+		private final boolean mapped;
+		private Chunk previous;
+		private Chunk next;
+
+		Chunk(ByteBuffer buffer, boolean mapped) {
+			this.buffer = buffer;
+			this.mapped = mapped;
+		}
+	}
+}
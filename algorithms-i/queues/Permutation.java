@@ -1,16 +1,322 @@
-import edu.princeton.cs.algs4.StdIn;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
 import edu.princeton.cs.algs4.StdOut;
 
+// Prints k strings chosen uniformly at random from all of the whitespace-separated strings of the input,
+// in random order. The input is read once with O(k) memory using reservoir sampling (Algorithm L),
+// which skips over tokens between replacements without decoding them.
+// Usage: Permutation k [file [threads]]; without a file the input is read from standard input.
 public class Permutation {
-	public static void main(String[] args) {
+
+	public static void main(String[] args) throws IOException {
 		int k = Integer.parseInt(args[0]);
+		if (k < 0) {
+			throw new IllegalArgumentException("k cannot be negative.");
+		}
+
+		SplittableRandom random = new SplittableRandom();
+		Reservoir reservoir;
+		if (args.length < 2) {
+			reservoir = Reservoir.sample(new TokenReader(Channels.newChannel(System.in)), k, random);
+		} else {
+			int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+			try (FileChannel channel = FileChannel.open(Path.of(args[1]), StandardOpenOption.READ)) {
+				reservoir = sampleInParallel(channel, k, threads, random);
+			}
+		}
+
 		RandomizedQueue<String> queue = new RandomizedQueue<>();
-		for (var i = 0; i < k; i++) {
-			queue.enqueue(StdIn.readString());
+		for (var i = 0; i < reservoir.size(); i++) {
+			queue.enqueue(reservoir.get(i));
 		}
-		
+
 		for (String str : queue) {
 			StdOut.println(str);
 		}
 	}
+
+	// samples every chunk of the file in its own task and merges the reservoirs
+	private static Reservoir sampleInParallel(FileChannel channel, int k, int threads, SplittableRandom random) throws IOException {
+		long length = channel.size();
+		int chunks = (int) Math.max(1, Math.min(threads, length / (1 << 20)));
+		List<Callable<Reservoir>> tasks = new ArrayList<>();
+		for (var i = 0; i < chunks; i++) {
+			long start = length * i / chunks;
+			long end = length * (i + 1) / chunks;
+			SplittableRandom stream = random.split();
+			tasks.add(() -> Reservoir.sample(new TokenReader(channel, start, end), k, stream));
+		}
+
+		List<Reservoir> reservoirs = new ArrayList<>();
+		if (chunks == 1) {
+			try {
+				reservoirs.add(tasks.get(0).call());
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(chunks);
+			try {
+				for (Future<Reservoir> future : pool.invokeAll(tasks)) {
+					reservoirs.add(future.get());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			} finally {
+				pool.shutdown();
+			}
+		}
+
+		return Reservoir.merge(reservoirs, k, random);
+	}
+}
+
+// a uniform random sample of at most k of the tokens seen, and how many tokens were seen
+class Reservoir {
+
+	private final String[] items;
+	private int size;
+	private long seen;
+
+	public Reservoir(int capacity) {
+		this.items = new String[capacity];
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public String get(int index) {
+		return this.items[index];
+	}
+
+	// Algorithm L: after the reservoir fills up, the gap to the next replacement is drawn directly
+	public static Reservoir sample(TokenReader reader, int k, SplittableRandom random) {
+		Reservoir reservoir = new Reservoir(k);
+		while (reservoir.size < k) {
+			String token = reader.next();
+			if (token == null) {
+				return reservoir;
+			}
+			reservoir.items[reservoir.size++] = token;
+			++reservoir.seen;
+		}
+
+		if (k == 0) {
+			reservoir.seen += reader.skip(Long.MAX_VALUE);
+			return reservoir;
+		}
+
+		double w = Math.exp(Math.log(uniform(random)) / k);
+		while (true) {
+			long gap = (long) Math.floor(Math.log(uniform(random)) / Math.log1p(-w));
+			long skipped = reader.skip(gap);
+			reservoir.seen += skipped;
+			if (skipped < gap) {
+				return reservoir;
+			}
+
+			String token = reader.next();
+			if (token == null) {
+				return reservoir;
+			}
+			reservoir.items[random.nextInt(k)] = token;
+			++reservoir.seen;
+			w *= Math.exp(Math.log(uniform(random)) / k);
+		}
+	}
+
+	// combines samples of disjoint parts of the input into a sample of the whole: the number of picks
+	// from each part follows the multivariate hypergeometric distribution of the part sizes,
+	// and the picks from a part are a random subset of its reservoir
+	public static Reservoir merge(List<Reservoir> parts, int k, SplittableRandom random) {
+		long[] remaining = new long[parts.size()];
+		long total = 0;
+		for (var i = 0; i < parts.size(); i++) {
+			remaining[i] = parts.get(i).seen;
+			total += remaining[i];
+		}
+
+		int[] picks = new int[parts.size()];
+		long draws = Math.min(k, total);
+		for (long d = 0; d < draws; d++) {
+			long target = random.nextLong(total);
+			int part = 0;
+			while (target >= remaining[part]) {
+				target -= remaining[part++];
+			}
+			--remaining[part];
+			--total;
+			++picks[part];
+		}
+
+		Reservoir merged = new Reservoir(k);
+		for (var i = 0; i < parts.size(); i++) {
+			Reservoir part = parts.get(i);
+			String[] items = Arrays.copyOf(part.items, part.size);
+			for (var j = 0; j < picks[i]; j++) {
+				int index = j + random.nextInt(items.length - j);
+				merged.items[merged.size++] = items[index];
+				items[index] = items[j];
+			}
+			merged.seen += part.seen;
+		}
+
+		return merged;
+	}
+
+	// uniform in (0, 1], so its logarithm is finite
+	private static double uniform(SplittableRandom random) {
+		return 1.0 - random.nextDouble();
+	}
+}
+
+// splits a byte channel into whitespace-separated tokens, decoding only the tokens that are asked for
+class TokenReader {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final ReadableByteChannel channel;
+	private final FileChannel file;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	// for a file chunk: position of the next read, and where tokens stop starting
+	private long position;
+	private final long end;
+
+	private byte[] token = new byte[64];
+	private boolean exhausted;
+
+	// reads every token of the channel
+	public TokenReader(ReadableByteChannel channel) {
+		this.channel = channel;
+		this.file = null;
+		this.end = Long.MAX_VALUE;
+		this.buffer.flip();
+	}
+
+	// reads the tokens of the file that start in [start, end)
+	public TokenReader(FileChannel file, long start, long end) {
+		this.channel = null;
+		this.file = file;
+		this.position = start;
+		this.end = end;
+		this.buffer.flip();
+
+		// a token running into the chunk belongs to the chunk before
+		if (start > 0) {
+			this.position = start - 1;
+			this.skipToken();
+		}
+	}
+
+	// returns the next token, or null at the end of the input
+	public String next() {
+		if (!this.skipWhitespace()) {
+			return null;
+		}
+
+		int length = 0;
+		int b;
+		while ((b = this.read()) > ' ') {
+			if (length == this.token.length) {
+				this.token = Arrays.copyOf(this.token, 2 * length);
+			}
+			this.token[length++] = (byte) b;
+		}
+
+		return new String(this.token, 0, length, StandardCharsets.UTF_8);
+	}
+
+	// skips up to count tokens and returns how many were skipped
+	public long skip(long count) {
+		long skipped = 0;
+		while (skipped < count && this.skipWhitespace()) {
+			this.skipToken();
+			++skipped;
+		}
+
+		return skipped;
+	}
+
+	// moves to the first byte of the next token, returning false if there is none in range
+	private boolean skipWhitespace() {
+		while (true) {
+			int b = this.peek();
+			if (b < 0) {
+				return false;
+			} else if (b > ' ') {
+				return this.offset() < this.end;
+			}
+			this.buffer.get();
+		}
+	}
+
+	private void skipToken() {
+		while (this.peek() > ' ') {
+			this.buffer.get();
+		}
+	}
+
+	// offset in the file of the next byte
+	private long offset() {
+		return this.position - this.buffer.remaining();
+	}
+
+	private int read() {
+		int b = this.peek();
+		if (b >= 0) {
+			this.buffer.get();
+		}
+		return b;
+	}
+
+	private int peek() {
+		if (!this.buffer.hasRemaining() && !this.fill()) {
+			return -1;
+		}
+		return this.buffer.get(this.buffer.position()) & 0xFF;
+	}
+
+	private boolean fill() {
+		if (this.exhausted) {
+			return false;
+		}
+
+		try {
+			this.buffer.clear();
+			int read;
+			do {
+				read = this.file != null ? this.file.read(this.buffer, this.position) : this.channel.read(this.buffer);
+			} while (read == 0);
+			this.buffer.flip();
+			if (read < 0) {
+				this.exhausted = true;
+				return false;
+			}
+			this.position += read;
+			return true;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
 }
@@ -1,3 +1,5 @@
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -5,21 +7,29 @@ import edu.princeton.cs.algs4.StdRandom;
 
 public class RandomizedQueue<Item> implements Iterable<Item> {
 
-	private final Deque<Item> deque;
+	private static final int MIN_CAPACITY = 8;
+
+	// items live in items[0..count), in no particular order
+	private Item[] items;
+	private int count;
+
+	// number of structural changes, checked by permutation iterators
+	private int modCount;
 	
     // construct an empty randomized queue
+    @SuppressWarnings("unchecked")
     public RandomizedQueue() {
-    	this.deque = new Deque<Item>();
+    	this.items = (Item[]) new Object[MIN_CAPACITY];
     }
 
     // is the randomized queue empty?
     public boolean isEmpty() {
-    	return this.deque.isEmpty();
+    	return this.count == 0;
     }
 
     // return the number of items on the randomized queue
     public int size() {
-    	return this.deque.size();
+    	return this.count;
     }
 
     // add the item
@@ -28,11 +38,12 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
     		throw new IllegalArgumentException("Item cannot be null");
     	}
     	
-    	if (StdRandom.uniform(2) == 0) {
-    		this.deque.addFirst(item);
-    	} else {
-    		this.deque.addLast(item);
+    	if (this.count == this.items.length) {
+    		this.resize(2 * this.items.length);
     	}
+    	
+    	this.items[this.count++] = item;
+    	++this.modCount;
     }
 
     // remove and return a random item
@@ -41,11 +52,18 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
     		throw new NoSuchElementException();
     	}
     	
-    	if (StdRandom.uniform(2) == 0) {
-    		return this.deque.removeFirst();
-    	} else {
-    		return this.deque.removeLast();
+    	// move the last item into the hole left by the random one
+    	int index = StdRandom.uniform(this.count);
+    	Item item = this.items[index];
+    	this.items[index] = this.items[--this.count];
+    	this.items[this.count] = null;
+    	++this.modCount;
+    	
+    	if (this.items.length > MIN_CAPACITY && this.count <= this.items.length / 4) {
+    		this.resize(this.items.length / 2);
     	}
+    	
+    	return item;
     }
 
     // return a random item (but do not remove it)
@@ -54,20 +72,25 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
     		throw new NoSuchElementException();
     	}
     	
-    	if (StdRandom.uniform(2) == 0) {
-    		Item first = this.deque.removeFirst();
-    		this.deque.addFirst(first);
-    		return first;
-    	} else {
-    		Item last = this.deque.removeLast();
-    		this.deque.addLast(last);
-    		return last;
-    	}
+    	return this.items[StdRandom.uniform(this.count)];
     }
 
     // return an independent iterator over items in random order
     public Iterator<Item> iterator() {
-    	return new RandomizedQueueIterator<>(this.deque);
+    	return new RandomizedQueueIterator<>(this.items, this.count);
+    }
+
+    // return an iterator over items in pseudo-random order that copies nothing and starts in O(1);
+    // it reads the queue in place, so it fails fast if the queue changes while it is in use
+    public Iterator<Item> permutationIterator() {
+    	return new PermutationIterator();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void resize(int capacity) {
+    	Item[] resized = (Item[]) new Object[capacity];
+    	System.arraycopy(this.items, 0, resized, 0, this.count);
+    	this.items = resized;
     }
 
     // unit testing (required)
@@ -84,35 +107,89 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
     	for (int i : queue) {
     		System.out.println(i);
     	}
+    	
+    	Iterator<Integer> iterator = queue.permutationIterator();
+    	while (iterator.hasNext()) {
+    		System.out.println(iterator.next());
+    	}
+    }
+
+    // walks the indices of the queue through a Feistel bijection on the smallest power of four
+    // covering them, re-applying it to any index that falls outside the queue (cycle walking)
+    private class PermutationIterator implements Iterator<Item> {
+
+    	private static final int ROUNDS = 4;
+
+    	private final int expectedModCount = RandomizedQueue.this.modCount;
+    	private final int halfBits;
+    	private final int halfMask;
+    	private final int[] keys = new int[ROUNDS];
+    	private int position;
+
+    	PermutationIterator() {
+    		int bits = 32 - Integer.numberOfLeadingZeros(Math.max(1, RandomizedQueue.this.count - 1));
+    		this.halfBits = Math.max(1, (bits + 1) / 2);
+    		this.halfMask = (1 << this.halfBits) - 1;
+    		for (int i = 0; i < ROUNDS; i++) {
+    			this.keys[i] = StdRandom.uniform(Integer.MAX_VALUE);
+    		}
+    	}
+
+    	@Override
+    	public boolean hasNext() {
+    		return this.position < RandomizedQueue.this.count;
+    	}
+
+    	@Override
+    	public Item next() {
+    		if (RandomizedQueue.this.modCount != this.expectedModCount) {
+    			throw new ConcurrentModificationException();
+    		}
+    		if (!this.hasNext()) {
+    			throw new NoSuchElementException();
+    		}
+
+    		int index = this.permute(this.position++);
+    		while (index >= RandomizedQueue.this.count) {
+    			index = this.permute(index);
+    		}
+    		return RandomizedQueue.this.items[index];
+    	}
+
+    	@Override
+    	public void remove() {
+    		throw new UnsupportedOperationException();
+    	}
+
+    	private int permute(int index) {
+    		int left = index >>> this.halfBits;
+    		int right = index & this.halfMask;
+    		for (int i = 0; i < ROUNDS; i++) {
+    			int mixed = (right ^ this.keys[i]) * 0x9E3779B9;
+    			int next = left ^ ((mixed ^ (mixed >>> 15)) & this.halfMask);
+    			left = right;
+    			right = next;
+    		}
+    		return (left << this.halfBits) | right;
+    	}
     }
 
 }
 
+// shuffles a copy of the items lazily, one Fisher-Yates step per call to next()
 class RandomizedQueueIterator<Item> implements Iterator<Item> {
 
 	private final Item[] items;
 	private int current;
 	
-	public RandomizedQueueIterator(Deque<Item> deque) {
-		this.items = (Item[])new Object[deque.size()];
+	public RandomizedQueueIterator(Item[] queueItems, int count) {
+		this.items = Arrays.copyOf(queueItems, count);
 		this.current = 0;
-		int count = 0;
-		for (Item item : deque) {
-			this.items[count++] = item;
-		}
-		
-		// shuffle array
-		for (int i = this.items.length - 1; i >= 0; i--) {
-			int index = StdRandom.uniform(i + 1);
-			Item it = this.items[index];
-			this.items[index] = this.items[i];
-			this.items[i] = it;
-		}
 	}
 	
 	@Override
 	public boolean hasNext() {
-		return this.current < this.items.length - 1;
+		return this.current < this.items.length;
 	}
 
 	@Override
@@ -121,11 +198,16 @@ class RandomizedQueueIterator<Item> implements Iterator<Item> {
 			throw new NoSuchElementException();
 		}
 		
-		return this.items[this.current++];
+		// pick one of the items not returned yet and swap it into the next position
+		int index = this.current + StdRandom.uniform(this.items.length - this.current);
+		Item item = this.items[index];
+		this.items[index] = this.items[this.current];
+		this.items[this.current++] = null;
+		return item;
 	}
 	
 	@Override
 	public void remove() {
 		throw new UnsupportedOperationException();
 	}
-}
\ No newline at end of file
+}
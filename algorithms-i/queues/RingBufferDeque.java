@@ -0,0 +1,204 @@
+import java.lang.management.ManagementFactory;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Deque with the same API as Deque, backed by a circular array instead of linked nodes,
+// so adding an item allocates nothing once the array has grown to fit.
+public class RingBufferDeque<Item> implements Iterable<Item> {
+
+	private static final int MIN_CAPACITY = 8;
+
+	// items live in items[head], items[head + 1], ... wrapping around; the length is a power of two
+	private Item[] items;
+	private int head;
+	private int count;
+
+	// number of structural changes, checked by iterators
+	private int modCount;
+
+    // construct an empty deque
+    @SuppressWarnings("unchecked")
+    public RingBufferDeque() {
+    	this.items = (Item[]) new Object[MIN_CAPACITY];
+    }
+
+    // is the deque empty?
+    public boolean isEmpty() {
+    	return this.count == 0;
+    }
+
+    // return the number of items on the deque
+    public int size() {
+    	return this.count;
+    }
+
+    // add the item to the front
+    public void addFirst(Item item) {
+    	if (item == null) {
+    		throw new IllegalArgumentException("Item cannot be null");
+    	}
+
+    	if (this.count == this.items.length) {
+    		this.resize(2 * this.items.length);
+    	}
+
+    	this.head = (this.head - 1) & (this.items.length - 1);
+    	this.items[this.head] = item;
+    	++this.count;
+    	++this.modCount;
+    }
+
+    // add the item to the back
+    public void addLast(Item item) {
+    	if (item == null) {
+    		throw new IllegalArgumentException("Item cannot be null");
+    	}
+
+    	if (this.count == this.items.length) {
+    		this.resize(2 * this.items.length);
+    	}
+
+    	this.items[(this.head + this.count) & (this.items.length - 1)] = item;
+    	++this.count;
+    	++this.modCount;
+    }
+
+    // remove and return the item from the front
+    public Item removeFirst() {
+    	if (this.count == 0) {
+    		throw new NoSuchElementException();
+    	}
+
+    	Item item = this.items[this.head];
+    	this.items[this.head] = null;
+    	this.head = (this.head + 1) & (this.items.length - 1);
+    	--this.count;
+    	++this.modCount;
+    	this.shrinkIfSparse();
+    	return item;
+    }
+
+    // remove and return the item from the back
+    public Item removeLast() {
+    	if (this.count == 0) {
+    		throw new NoSuchElementException();
+    	}
+
+    	int tail = (this.head + this.count - 1) & (this.items.length - 1);
+    	Item item = this.items[tail];
+    	this.items[tail] = null;
+    	--this.count;
+    	++this.modCount;
+    	this.shrinkIfSparse();
+    	return item;
+    }
+
+    // return an iterator over items in order from front to back
+    public Iterator<Item> iterator() {
+    	return new RingBufferIterator();
+    }
+
+    // halve the array when it is a quarter full, so it stays between 25% and 100% full
+    private void shrinkIfSparse() {
+    	if (this.items.length > MIN_CAPACITY && this.count <= this.items.length / 4) {
+    		this.resize(this.items.length / 2);
+    	}
+    }
+
+    // copy the items, unwrapped, to the front of a new array
+    @SuppressWarnings("unchecked")
+    private void resize(int capacity) {
+    	Item[] resized = (Item[]) new Object[capacity];
+    	int firstPart = Math.min(this.count, this.items.length - this.head);
+    	System.arraycopy(this.items, this.head, resized, 0, firstPart);
+    	System.arraycopy(this.items, 0, resized, firstPart, this.count - firstPart);
+    	this.items = resized;
+    	this.head = 0;
+    }
+
+    // unit testing, plus a throughput and allocation comparison against Deque
+    public static void main(String[] args) {
+    	var queue = new RingBufferDeque<Integer>();
+    	queue.addFirst(1);
+    	queue.addFirst(2);
+    	queue.addFirst(3);
+    	queue.addLast(4);
+    	queue.addLast(5);
+    	queue.addLast(6);
+    	queue.removeFirst();
+    	queue.removeLast();
+    	for (int value : queue) {
+    		System.out.println(value);
+    	}
+
+    	int operations = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+    	Integer item = 42;
+    	for (var round = 0; round < 3; round++) {
+    		long allocated = allocatedBytes();
+    		long start = System.nanoTime();
+    		Deque<Integer> linked = new Deque<>();
+    		for (var i = 0; i < operations; i++) {
+    			linked.addLast(item);
+    			if ((i & 1) == 1) {
+    				linked.removeFirst();
+    			}
+    		}
+    		long linkedTime = System.nanoTime() - start;
+    		long linkedBytes = allocatedBytes() - allocated;
+
+    		allocated = allocatedBytes();
+    		start = System.nanoTime();
+    		RingBufferDeque<Integer> ring = new RingBufferDeque<>();
+    		for (var i = 0; i < operations; i++) {
+    			ring.addLast(item);
+    			if ((i & 1) == 1) {
+    				ring.removeFirst();
+    			}
+    		}
+    		long ringTime = System.nanoTime() - start;
+    		long ringBytes = allocatedBytes() - allocated;
+
+    		System.out.printf("Deque: %.1f M ops/s, %,d bytes allocated; RingBufferDeque: %.1f M ops/s, %,d bytes allocated%n",
+    				operations / (linkedTime / 1e3), linkedBytes, operations / (ringTime / 1e3), ringBytes);
+    	}
+    }
+
+    // bytes allocated by the current thread so far, or 0 where the JVM does not report it
+    private static long allocatedBytes() {
+    	var threads = ManagementFactory.getThreadMXBean();
+    	if (threads instanceof com.sun.management.ThreadMXBean) {
+    		return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    	}
+    	return 0;
+    }
+
+    private class RingBufferIterator implements Iterator<Item> {
+
+    	private final int expectedModCount = RingBufferDeque.this.modCount;
+    	private int position;
+
+    	@Override
+    	public boolean hasNext() {
+    		return this.position < RingBufferDeque.this.count;
+    	}
+
+    	@Override
+    	public Item next() {
+    		if (RingBufferDeque.this.modCount != this.expectedModCount) {
+    			throw new ConcurrentModificationException();
+    		}
+    		if (!this.hasNext()) {
+    			throw new NoSuchElementException();
+    		}
+
+    		Item[] items = RingBufferDeque.this.items;
+    		return items[(RingBufferDeque.this.head + this.position++) & (items.length - 1)];
+    	}
+
+    	@Override
+    	public void remove() {
+    		throw new UnsupportedOperationException();
+    	}
+    }
+}
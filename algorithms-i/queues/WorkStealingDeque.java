@@ -0,0 +1,288 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Chase-Lev work-stealing deque: one owner thread adds and removes items at the back without locks,
+// while any number of thief threads steal items from the front. Follows the weak-memory version of
+// Le, Pop, Cohen and Zappa Nardelli, with the fences expressed through VarHandles.
+public class WorkStealingDeque<Item> {
+
+	private static final int MIN_CAPACITY = 32;
+
+	private static final VarHandle TOP;
+	private static final VarHandle BOTTOM;
+	private static final VarHandle ARRAY;
+	private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(Object[].class);
+
+	static {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			TOP = lookup.findVarHandle(WorkStealingDeque.class, "top", long.class);
+			BOTTOM = lookup.findVarHandle(WorkStealingDeque.class, "bottom", long.class);
+			ARRAY = lookup.findVarHandle(WorkStealingDeque.class, "array", Object[].class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	// index of the front item, advanced by thieves and by the owner taking the last item
+	@SuppressWarnings("unused")
+	private volatile long top;
+
+	// index one past the back item, written only by the owner
+	@SuppressWarnings("unused")
+	private long bottom;
+
+	// circular buffer whose length is a power of two, replaced only by the owner
+	@SuppressWarnings("unused")
+	private Object[] array = new Object[MIN_CAPACITY];
+
+	// construct an empty deque
+	public WorkStealingDeque() {
+	}
+
+	// is the deque empty? only a snapshot when other threads are active
+	public boolean isEmpty() {
+		return this.size() == 0;
+	}
+
+	// return the number of items on the deque; only a snapshot when other threads are active
+	public int size() {
+		long b = (long) BOTTOM.getAcquire(this);
+		long t = (long) TOP.getAcquire(this);
+		return (int) Math.max(0, b - t);
+	}
+
+	// add the item to the back; owner thread only
+	public void addLast(Item item) {
+		if (item == null) {
+			throw new IllegalArgumentException("Item cannot be null");
+		}
+
+		long b = (long) BOTTOM.getOpaque(this);
+		long t = (long) TOP.getAcquire(this);
+		Object[] a = (Object[]) ARRAY.getOpaque(this);
+		if (b - t > a.length - 1) {
+			a = this.grow(a, t, b);
+		}
+
+		SLOT.setOpaque(a, (int) b & (a.length - 1), item);
+		VarHandle.releaseFence();
+		BOTTOM.setOpaque(this, b + 1);
+	}
+
+	// remove and return the item from the back; owner thread only
+	@SuppressWarnings("unchecked")
+	public Item removeLast() {
+		long b = (long) BOTTOM.getOpaque(this) - 1;
+		Object[] a = (Object[]) ARRAY.getOpaque(this);
+		BOTTOM.setOpaque(this, b);
+		VarHandle.fullFence();
+		long t = (long) TOP.getOpaque(this);
+
+		if (t > b) {
+			BOTTOM.setOpaque(this, b + 1);
+			throw new NoSuchElementException();
+		}
+
+		int slot = (int) b & (a.length - 1);
+		Object item = SLOT.getOpaque(a, slot);
+		if (t == b) {
+			// the last item: race the thieves for it
+			boolean won = TOP.compareAndSet(this, t, t + 1);
+			BOTTOM.setOpaque(this, b + 1);
+			if (!won) {
+				throw new NoSuchElementException();
+			}
+		}
+
+		// the slot is the owner's now, so it can be cleared without racing a thief
+		SLOT.setOpaque(a, slot, null);
+		return (Item) item;
+	}
+
+	// remove and return the item from the front, or null if the deque is empty
+	// or another thread took the item first; any thread
+	@SuppressWarnings("unchecked")
+	public Item steal() {
+		long t = (long) TOP.getAcquire(this);
+		VarHandle.fullFence();
+		long b = (long) BOTTOM.getAcquire(this);
+		if (t >= b) {
+			return null;
+		}
+
+		Object[] a = (Object[]) ARRAY.getAcquire(this);
+		int slot = (int) t & (a.length - 1);
+		Object item = SLOT.getOpaque(a, slot);
+		if (!TOP.compareAndSet(this, t, t + 1)) {
+			return null;
+		}
+
+		// the slot is left for the owner to overwrite: once top has moved the owner may already have wrapped
+		// around and stored a newer item there, possibly the very same reference
+		return (Item) item;
+	}
+
+	// copy the live items into a buffer twice as large and publish it
+	private Object[] grow(Object[] a, long t, long b) {
+		Object[] grown = new Object[2 * a.length];
+		for (long i = t; i < b; i++) {
+			grown[(int) i & (grown.length - 1)] = a[(int) i & (a.length - 1)];
+		}
+
+		ARRAY.setRelease(this, grown);
+		return grown;
+	}
+
+	// stress test, then throughput against ConcurrentLinkedDeque
+	public static void main(String[] args) throws InterruptedException {
+		int thieves = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		int items = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+
+		// every item must be taken exactly once, by the owner or by a thief
+		WorkStealingDeque<Integer> deque = new WorkStealingDeque<>();
+		AtomicIntegerArray taken = new AtomicIntegerArray(items);
+		AtomicLong done = new AtomicLong();
+		Thread[] workers = new Thread[thieves];
+		for (int i = 0; i < thieves; i++) {
+			workers[i] = new Thread(() -> {
+				while (done.get() < items) {
+					Integer item = deque.steal();
+					if (item != null) {
+						if (taken.getAndIncrement(item) != 0) {
+							throw new IllegalStateException("Item " + item + " was taken twice.");
+						}
+						done.incrementAndGet();
+					}
+				}
+			});
+			workers[i].start();
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < items; i++) {
+			deque.addLast(i);
+			if (i % 3 == 2) {
+				try {
+					Integer item = deque.removeLast();
+					if (taken.getAndIncrement(item) != 0) {
+						throw new IllegalStateException("Item " + item + " was taken twice.");
+					}
+					done.incrementAndGet();
+				} catch (NoSuchElementException e) {
+					// the thieves emptied the deque
+				}
+			}
+		}
+		while (done.get() < items) {
+			try {
+				Integer item = deque.removeLast();
+				if (taken.getAndIncrement(item) != 0) {
+					throw new IllegalStateException("Item " + item + " was taken twice.");
+				}
+				done.incrementAndGet();
+			} catch (NoSuchElementException e) {
+				Thread.onSpinWait();
+			}
+		}
+		long dequeTime = System.nanoTime() - start;
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		for (int i = 0; i < items; i++) {
+			if (taken.get(i) != 1) {
+				throw new IllegalStateException("Item " + i + " was lost.");
+			}
+		}
+		System.out.println("stress test passed: " + items + " items, " + thieves + " thieves");
+
+		// one shared reference pushed over and over, so the buffer wraps around many times with every slot
+		// holding the same item; a thief clearing a slot it no longer owns would lose an item
+		WorkStealingDeque<Integer> shared = new WorkStealingDeque<>();
+		Integer item = 42;
+		AtomicLong stolen = new AtomicLong();
+		AtomicBoolean stop = new AtomicBoolean();
+		for (int i = 0; i < thieves; i++) {
+			workers[i] = new Thread(() -> {
+				while (!stop.get()) {
+					if (shared.steal() != null) {
+						stolen.incrementAndGet();
+					}
+				}
+			});
+			workers[i].start();
+		}
+		long removed = 0;
+		for (int i = 0; i < items; i++) {
+			shared.addLast(item);
+			if (i % 3 == 2) {
+				try {
+					if (shared.removeLast() == null) {
+						throw new IllegalStateException("Item was erased.");
+					}
+					++removed;
+				} catch (NoSuchElementException e) {
+					// the thieves emptied the deque
+				}
+			}
+		}
+		// once removeLast finds the deque empty nothing more is pushed, so only the thieves' last steals are left
+		while (true) {
+			try {
+				if (shared.removeLast() == null) {
+					throw new IllegalStateException("Item was erased.");
+				}
+				++removed;
+			} catch (NoSuchElementException e) {
+				break;
+			}
+		}
+		stop.set(true);
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		if (removed + stolen.get() != items) {
+			throw new IllegalStateException((items - removed - stolen.get()) + " shared items were lost.");
+		}
+		System.out.println("shared reference stress test passed: " + items + " pushes of one item, " + thieves + " thieves");
+
+		// the same workload on ConcurrentLinkedDeque, the owner at the tail and the thieves at the head
+		ConcurrentLinkedDeque<Integer> linked = new ConcurrentLinkedDeque<>();
+		AtomicLong linkedDone = new AtomicLong();
+		for (int i = 0; i < thieves; i++) {
+			workers[i] = new Thread(() -> {
+				while (linkedDone.get() < items) {
+					if (linked.pollFirst() != null) {
+						linkedDone.incrementAndGet();
+					}
+				}
+			});
+			workers[i].start();
+		}
+
+		start = System.nanoTime();
+		for (int i = 0; i < items; i++) {
+			linked.addLast(i);
+			if (i % 3 == 2 && linked.pollLast() != null) {
+				linkedDone.incrementAndGet();
+			}
+		}
+		while (linkedDone.get() < items) {
+			if (linked.pollLast() != null) {
+				linkedDone.incrementAndGet();
+			}
+		}
+		long linkedTime = System.nanoTime() - start;
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		System.out.printf("WorkStealingDeque: %.1f M items/s, ConcurrentLinkedDeque: %.1f M items/s%n",
+				items / (dequeTime / 1e3), items / (linkedTime / 1e3));
+	}
+}